@@ -0,0 +1,129 @@
+import java.util.Arrays;
+
+/**
+ * Class holding the sold state of the seats of a voyage, one bit per seat packed into long words.
+ * Seats are indexed from 0 here; voyages number them from 1.
+ */
+public class SeatMap {
+    private final long[] words;
+    private final int size;
+
+    /**
+     * Constructor for creating a seat map with every seat free.
+     * @param size The number of seats.
+     */
+    public SeatMap(int size) {
+        this.size = size;
+        this.words = new long[(size + 63) >>> 6];
+    }
+
+    /**
+     * Method to get the number of seats.
+     * @return The number of seats.
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Method to check if a seat is sold.
+     * @param index The seat index.
+     * @return true if the seat is sold, false otherwise.
+     */
+    public boolean isSold(int index) {
+        return (words[index >>> 6] & (1L << index)) != 0;
+    }
+
+    /**
+     * Method to mark a seat as sold.
+     * @param index The seat index.
+     */
+    public void sell(int index) {
+        words[index >>> 6] |= 1L << index;
+    }
+
+    /**
+     * Method to mark a seat as free.
+     * @param index The seat index.
+     */
+    public void release(int index) {
+        words[index >>> 6] &= ~(1L << index);
+    }
+
+    /**
+     * Method to mark every seat as free.
+     */
+    public void releaseAll() {
+        Arrays.fill(words, 0L);
+    }
+
+    /**
+     * Method to count the sold seats a word at a time.
+     * @return The number of sold seats.
+     */
+    public int soldCount() {
+        int count = 0;
+        for (long word : words) {
+            count += Long.bitCount(word);
+        }
+        return count;
+    }
+
+    /**
+     * Method to find the first sold seat at or after an index, skipping free words whole.
+     * @param from The index to start from.
+     * @return The seat index, or -1 if there is none.
+     */
+    public int nextSold(int from) {
+        if (from >= size) return -1;
+        int wordIndex = from >>> 6;
+        long word = words[wordIndex] & (-1L << from);
+        while (word == 0) {
+            if (++wordIndex == words.length) return -1;
+            word = words[wordIndex];
+        }
+        return (wordIndex << 6) + Long.numberOfTrailingZeros(word);
+    }
+
+    /**
+     * Method to find the first free seat at or after an index, skipping full words whole.
+     * @param from The index to start from.
+     * @return The seat index, or -1 if there is none.
+     */
+    public int nextFree(int from) {
+        if (from >= size) return -1;
+        int wordIndex = from >>> 6;
+        long word = ~words[wordIndex] & (-1L << from);
+        while (word == 0) {
+            if (++wordIndex == words.length) return -1;
+            word = ~words[wordIndex];
+        }
+        int index = (wordIndex << 6) + Long.numberOfTrailingZeros(word);
+        return index < size ? index : -1;
+    }
+
+    /**
+     * Method to find the first run of adjacent free seats of a given length. A run never
+     * crosses the end of a row or the aisle, since seats on either side of those are not
+     * next to each other.
+     * @param count      The number of seats needed.
+     * @param rowLength  The number of seats in a row.
+     * @param aisleAfter The number of seats before the aisle in a row, or 0 if the rows have no aisle.
+     * @return The index of the first seat of the run, or -1 if there is none or count is less than 1.
+     */
+    public int firstFreeRun(int count, int rowLength, int aisleAfter) {
+        if (count < 1) return -1;
+        int start = nextFree(0);
+        while (start >= 0) {
+            // The end of the side of the row the seat is on
+            int rowStart = start - start % rowLength;
+            int sideEnd = aisleAfter > 0 && start - rowStart < aisleAfter ? rowStart + aisleAfter : rowStart + rowLength;
+            sideEnd = Math.min(sideEnd, size);
+            int end = nextSold(start);
+            if (end < 0 || end > sideEnd) end = sideEnd;
+            if (end - start >= count) return start;
+            start = end < size ? nextFree(end) : -1;
+        }
+        return -1;
+    }
+}
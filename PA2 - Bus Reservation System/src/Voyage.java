@@ -1,6 +1,4 @@
 import java.io.PrintWriter;
-import java.util.ArrayList;
-import java.util.List;
 
 public abstract class Voyage {
     protected int id;
@@ -8,7 +6,7 @@ public abstract class Voyage {
     protected String to;
     protected int rows;
     protected double basePrice;
-    protected List<Boolean> ticketsSold;
+    protected final SeatMap ticketsSold;
     protected double revenue;
 
     public double getSeatPrice(int seatNumber) {
@@ -36,10 +34,7 @@ public abstract class Voyage {
         this.to = to;
         this.rows = rows;
         this.basePrice = basePrice;
-        this.ticketsSold = new ArrayList<>();
-        for (int i = 0; i < rows * getSeatsPerRow(); i++) {
-            ticketsSold.add(false);
-        }
+        this.ticketsSold = new SeatMap(rows * getSeatsPerRow());
     }
     /**
      * Method to sell a ticket for the voyage.
@@ -47,19 +42,19 @@ public abstract class Voyage {
      * @return true if the ticket is successfully sold, false otherwise.
      */
     public boolean sellTicket(int seatNumber) {
-        if (seatNumber < 1 || seatNumber > ticketsSold.size() || ticketsSold.get(seatNumber - 1)) {
+        if (seatNumber < 1 || seatNumber > ticketsSold.size() || ticketsSold.isSold(seatNumber - 1)) {
             return false;
         }
-        ticketsSold.set(seatNumber - 1, true);
+        ticketsSold.sell(seatNumber - 1);
         revenue += getSeatPrice(seatNumber);
         return true;
     }
 
     public void refundTicket(int seatNumber) {
-        if (seatNumber < 1 || seatNumber > ticketsSold.size() || !ticketsSold.get(seatNumber - 1)) {
+        if (seatNumber < 1 || seatNumber > ticketsSold.size() || !ticketsSold.isSold(seatNumber - 1)) {
             return;
         }
-        ticketsSold.set(seatNumber - 1, false);
+        ticketsSold.release(seatNumber - 1);
         revenue -= getRefundAmount(seatNumber);
     }
     /**
@@ -88,7 +83,7 @@ public abstract class Voyage {
         writer.printf("%s-%s%n", from, to);
         int seatsPerRow = getSeatsPerRow();
         for (int i = 0; i < ticketsSold.size(); i++) {
-            writer.print(ticketsSold.get(i) ? "X" : "*");
+            writer.print(ticketsSold.isSold(i) ? "X" : "*");
             if ((i + 1) % seatsPerRow == 0) writer.println();
             else if ((i + 1) % (seatsPerRow / 2) == 0) writer.print(" ");
         }
@@ -129,12 +124,10 @@ public abstract class Voyage {
 
     public void cancelVoyage() {
         double refundAmount = 0.0;
-        for (int i = 0; i < ticketsSold.size(); i++) {
-            if (ticketsSold.get(i)) {
-                refundAmount += getSeatPrice(i + 1);
-                ticketsSold.set(i, false);
-            }
+        for (int i = ticketsSold.nextSold(0); i >= 0; i = ticketsSold.nextSold(i + 1)) {
+            refundAmount += getSeatPrice(i + 1);
         }
+        ticketsSold.releaseAll();
         revenue -= refundAmount;
     }
     /**
@@ -143,7 +136,33 @@ public abstract class Voyage {
      * @return true if a ticket was sold, false otherwise.
      */
     public boolean ticketWasSold(int seatNumber) {
-        return ticketsSold.get(seatNumber - 1);
+        return ticketsSold.isSold(seatNumber - 1);
+    }
+
+    /**
+     * Method to get the number of tickets sold for the voyage.
+     * @return The number of sold seats.
+     */
+    public int getSoldCount() {
+        return ticketsSold.soldCount();
+    }
+
+    /**
+     * Method to get the number of seats before the aisle in a row.
+     * @return The number of seats, or 0 if the rows have no aisle.
+     */
+    protected int getSeatsBeforeAisle() {
+        return 0;
+    }
+
+    /**
+     * Method to find the first free seats that are next to each other, in one row and on one side of the aisle.
+     * @param count The number of seats needed.
+     * @return The seat number of the first of them, or -1 if there are not enough adjacent free seats or count is less than 1.
+     */
+    public int findAdjacentFreeSeats(int count) {
+        int index = ticketsSold.firstFreeRun(count, getSeatsPerRow(), getSeatsBeforeAisle());
+        return index < 0 ? -1 : index + 1;
     }
 
 
@@ -178,6 +197,10 @@ class PremiumVoyage extends Voyage {
         return 3;
     }
     @Override
+    protected int getSeatsBeforeAisle() {
+        return 1;
+    }
+    @Override
     public double getSeatPrice(int seatNumber) {
 
         if ((seatNumber - 1) % getSeatsPerRow() == 0) {
@@ -210,7 +233,7 @@ class PremiumVoyage extends Voyage {
             }
 
 
-            writer.print(ticketsSold.get(i) ? "X" : "*");
+            writer.print(ticketsSold.isSold(i) ? "X" : "*");
 
 
             if ((i + 1) % getSeatsPerRow() == 1) {
@@ -256,6 +279,11 @@ class StandardVoyage extends Voyage {
         return 4;
     }
 
+    @Override
+    protected int getSeatsBeforeAisle() {
+        return 2;
+    }
+
     @Override
     public double getRefundAmount(int seatNumber) {
         double seatPrice = getSeatPrice(seatNumber);
@@ -273,7 +301,7 @@ class StandardVoyage extends Voyage {
         writer.printf("%s-%s%n", from, to);
         for (int i = 0; i < ticketsSold.size(); i++) {
             if (i % getSeatsPerRow() == 0 && i != 0) writer.println();
-            writer.print(ticketsSold.get(i) ? "X" : "*");
+            writer.print(ticketsSold.isSold(i) ? "X" : "*");
             if ((i + 1) % getSeatsPerRow() != 0) writer.print(" ");
             if ((i + 1) % 2 == 0 && (i + 1) % getSeatsPerRow() != 0) writer.print("| ");
         }
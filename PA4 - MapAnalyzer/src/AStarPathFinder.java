@@ -0,0 +1,154 @@
+import java.util.*;
+
+/**
+ * Finds the fastest route with A*, guided by the straight-line distance to the end city
+ * and, if a LandmarkTable is given, by the landmark lower bounds (ALT).
+ * The straight-line heuristic is scaled down so that it never exceeds any road's distance, which
+ * keeps it admissible even when the coordinates and the road distances use different units.
+ * It is left out if any city has no coordinates; without landmarks the search is then plain Dijkstra.
+ */
+public class AStarPathFinder implements RouteFinder {
+    private final RoadNetwork roadNetwork;
+    private final RouteHeuristic heuristic;
+    private final LandmarkTable landmarks;
+    private RoadGraph graph;
+    private double[] xs;
+    private double[] ys;
+    private double scale;
+    // The number of cities settled by the last search of every thread
+    private final ThreadLocal<int[]> settledCounts = ThreadLocal.withInitial(() -> new int[1]);
+
+    public AStarPathFinder(RoadNetwork roadNetwork) {
+        this(roadNetwork, RouteHeuristic.EUCLIDEAN);
+    }
+
+    public AStarPathFinder(RoadNetwork roadNetwork, RouteHeuristic heuristic) {
+        this(roadNetwork, heuristic, null);
+    }
+
+    /**
+     * Creates a finder that uses both the coordinates and the landmark tables.
+     *
+     * @param roadNetwork The road network.
+     * @param heuristic   The distance between city positions.
+     * @param landmarks   The landmark tables computed for the current graph of the network, or null.
+     */
+    public AStarPathFinder(RoadNetwork roadNetwork, RouteHeuristic heuristic, LandmarkTable landmarks) {
+        this.roadNetwork = roadNetwork;
+        this.heuristic = heuristic;
+        this.landmarks = landmarks;
+    }
+
+    /**
+     * Gets the number of cities settled by the last search of the calling thread.
+     *
+     * @return The number of settled cities.
+     */
+    @Override
+    public int getSettledCount() {
+        return settledCounts.get()[0];
+    }
+
+    /**
+     * Checks if a heuristic is used, i.e. every city has coordinates or landmarks are given.
+     *
+     * @return true if searches are guided, false if they are plain Dijkstra.
+     */
+    public boolean hasHeuristic() {
+        prepare();
+        return scale > 0 || landmarks != null;
+    }
+
+    /**
+     * Finds the fastest route between the start city and the end city.
+     * The route has the same length as the one of ShortestPathFinder, but when several
+     * fastest routes exist a different one may be returned.
+     *
+     * @param startCity The starting city.
+     * @param endCity   The ending city.
+     * @return A RoadNetwork representing the fastest route.
+     */
+    @Override
+    public RoadNetwork findFastestRoute(String startCity, String endCity) {
+        prepare();
+        int[] settledCount = settledCounts.get();
+        settledCount[0] = 0;
+        int start = graph.cityId(startCity);
+        int end = graph.cityId(endCity);
+        if (start < 0 || end < 0 || !graph.components().connected(start, end)) return new RoadNetwork();
+
+        int cityCount = graph.cityCount();
+        IndexedMinHeap priorityQueue = new IndexedMinHeap(cityCount);
+        int[] distances = new int[cityCount];
+        int[] previousRoads = new int[cityCount];
+        boolean[] visitedCities = new boolean[cityCount];
+
+        Arrays.fill(distances, Integer.MAX_VALUE);
+        Arrays.fill(previousRoads, -1);
+        distances[start] = 0;
+        priorityQueue.push(start, IndexedMinHeap.key(estimate(start, end), -1));
+
+        while (!priorityQueue.isEmpty()) {
+            int currentCity = priorityQueue.poll();
+            visitedCities[currentCity] = true;
+            settledCount[0]++;
+            if (currentCity == end) break;
+
+            for (int edge = graph.firstEdge(currentCity); edge < graph.endEdge(currentCity); edge++) {
+                int neighborCity = graph.target(edge);
+                if (visitedCities[neighborCity]) continue;
+                int newDistance = distances[currentCity] + graph.weight(edge);
+
+                if (newDistance < distances[neighborCity]) {
+                    distances[neighborCity] = newDistance;
+                    previousRoads[neighborCity] = graph.road(edge);
+                    priorityQueue.push(neighborCity, IndexedMinHeap.key(newDistance + estimate(neighborCity, end), graph.roadId(edge)));
+                }
+            }
+        }
+
+        return graph.toRoadNetwork(ShortestPathFinder.tracePath(graph, previousRoads, end));
+    }
+
+    /**
+     * Lower bound of the route length between two cities. The largest of two consistent
+     * bounds is still consistent.
+     */
+    private int estimate(int city, int target) {
+        int bound = landmarks == null ? 0 : landmarks.lowerBound(city, target);
+        if (scale == 0) return bound;
+        return Math.max(bound, (int) (scale * heuristic.distance(xs[city], ys[city], xs[target], ys[target])));
+    }
+
+    /**
+     * Loads the coordinates of the current graph and computes the largest scale that keeps the
+     * heuristic below every road's distance. Since the heuristic satisfies the triangle inequality,
+     * this also makes it consistent.
+     */
+    private synchronized void prepare() {
+        RoadGraph current = roadNetwork.getGraph();
+        if (current == graph) return;
+        graph = current;
+        xs = new double[graph.cityCount()];
+        ys = new double[graph.cityCount()];
+        scale = 0;
+        if (heuristic == null) return;
+        for (int city = 0; city < graph.cityCount(); city++) {
+            double[] position = roadNetwork.getCoordinates(graph.cityName(city));
+            if (position == null) return;
+            xs[city] = position[0];
+            ys[city] = position[1];
+        }
+
+        scale = 1;
+        for (int road = 0; road < graph.roadCount(); road++) {
+            int city1 = graph.roadCity1(road);
+            int city2 = graph.roadCity2(road);
+            double straightLine = heuristic.distance(xs[city1], ys[city1], xs[city2], ys[city2]);
+            if (straightLine > graph.roadDistance(road)) {
+                scale = Math.min(scale, graph.roadDistance(road) / straightLine);
+            }
+        }
+        scale *= 1 - 1e-9; // Keeps rounding errors from pushing an estimate past a road's distance
+    }
+}
@@ -1,45 +1,448 @@
 import java.util.*;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.stream.IntStream;
 
 /**
  * Builds a barely connected map.
  */
 public class BarelyConnectedMapBuilder {
     private RoadNetwork roadNetwork;
+    private SearchMetrics metrics;
+
+    // Barely connected map kept by updateBarelyConnectedMap, over the changeable graph. Every
+    // tree of the map is rooted, so the map route between two cities is found by walking up.
+    private DynamicRoadGraph mapGraph;
+    private long mapVersion = -1;
+    private BitSet mapRoads;
+    private int[] parentRoads = new int[0];
+    private int[] depths = new int[0];
+    private int[][] mapAdjacency = new int[0][];
+    private int[] mapDegrees = new int[0];
+
+    // Work space of smallerPart and rootTree
+    private int[][] partQueues = {new int[0], new int[0]};
+    private int[] partMarks = new int[0];
+    private int partMark;
+    private int partSize;
 
     public BarelyConnectedMapBuilder(RoadNetwork roadNetwork) {
         this.roadNetwork = roadNetwork;
     }
 
     /**
-     * Builds the barely connected map.
+     * Sets the counters that the builds add their work to. Every city joined to the map counts
+     * as settled and every road looked at as relaxed; only Prim's algorithm uses a heap.
+     *
+     * @param metrics The counters, or null to stop counting.
+     */
+    public void setMetrics(SearchMetrics metrics) {
+        this.metrics = metrics;
+    }
+
+    /**
+     * Builds the barely connected map. If the network is not connected, the map has a
+     * separate tree for every component; the trees are grown in parallel.
      *
      * @return A RoadNetwork representing the barely connected map.
      */
     public RoadNetwork buildBarelyConnectedMap() {
-        PriorityQueue<Road> priorityQueue = new PriorityQueue<>(Comparator.comparingInt(Road::getDistance)
-                .thenComparingInt(Road::getId));
-        Set<String> connectedCities = new HashSet<>();
-        RoadNetwork barelyConnectedMap = new RoadNetwork();
-
-        String startCity = roadNetwork.getCities().iterator().next().getName();
-        connectedCities.add(startCity);
-        priorityQueue.addAll(roadNetwork.getCity(startCity).getRoads());
-
-        while (connectedCities.size() < roadNetwork.getCities().size()) {
-            Road minRoad = priorityQueue.poll();
-            String city1 = minRoad.getCity1();
-            String city2 = minRoad.getCity2();
-            if (connectedCities.contains(city1) && connectedCities.contains(city2)) continue;
-
-            barelyConnectedMap.addRoad(city1, city2, minRoad.getDistance(), minRoad.getId());
-            String newCity = connectedCities.contains(city1) ? city2 : city1;
-            connectedCities.add(newCity);
-            for (Road road : roadNetwork.getCity(newCity).getRoads()) {
-                if (!connectedCities.contains(road.getCity1()) || !connectedCities.contains(road.getCity2())) {
-                    priorityQueue.add(road);
+        RoadGraph graph = roadNetwork.getGraph();
+        GraphComponents components = graph.components();
+        boolean[] connectedCities = new boolean[graph.cityCount()];
+        long[] bestKeys = new long[graph.cityCount()];
+        int[] bestRoads = new int[graph.cityCount()];
+        Arrays.fill(bestKeys, Long.MAX_VALUE);
+        // A heap indexed by city for every worker thread, empty again after each tree
+        ThreadLocal<IndexedMinHeap> heaps = ThreadLocal.withInitial(() -> new IndexedMinHeap(graph.cityCount()));
+        int[][] trees = new int[components.componentCount()][];
+        // Every tree only touches the cities of its own component
+        IntStream.range(0, components.componentCount()).parallel()
+                .forEach(component -> trees[component] = growTree(graph, components.firstCity(component),
+                        components.size(component), heaps.get(), connectedCities, bestKeys, bestRoads, metrics));
+
+        int[] roads = new int[Math.max(0, graph.cityCount() - components.componentCount())];
+        int roadCount = 0;
+        for (int[] tree : trees) {
+            System.arraycopy(tree, 0, roads, roadCount, tree.length);
+            roadCount += tree.length;
+        }
+        return graph.toRoadNetwork(roads);
+    }
+
+    /**
+     * Grows a tree with Prim's algorithm from a city until its whole component is connected.
+     * The heap holds every city next to the tree once, keyed by its cheapest road to the tree,
+     * and the key is lowered when a cheaper road turns up.
+     *
+     * @return The road indexes of the tree, in the order they were added.
+     */
+    private static int[] growTree(RoadGraph graph, int startCity, int componentSize, IndexedMinHeap heap,
+                                  boolean[] connectedCities, long[] bestKeys, int[] bestRoads, SearchMetrics metrics) {
+        int[] tree = new int[componentSize - 1];
+        int treeSize = 0;
+        long popCount = 0;
+        long relaxedCount = 0;
+        long pushCount = 0;
+        int peakHeapSize = 0;
+
+        int newCity = startCity;
+        while (true) {
+            connectedCities[newCity] = true;
+            for (int edge = graph.firstEdge(newCity); edge < graph.endEdge(newCity); edge++) {
+                relaxedCount++;
+                int target = graph.target(edge);
+                long key = IndexedMinHeap.key(graph.weight(edge), graph.roadId(edge));
+                if (!connectedCities[target] && key < bestKeys[target]) {
+                    bestKeys[target] = key;
+                    bestRoads[target] = graph.road(edge);
+                    heap.push(target, key);
+                    pushCount++;
                 }
             }
+            peakHeapSize = Math.max(peakHeapSize, heap.size());
+            if (heap.isEmpty()) break;
+
+            newCity = heap.poll();
+            popCount++;
+            tree[treeSize++] = bestRoads[newCity];
+        }
+        if (metrics != null) {
+            metrics.recordSearch(treeSize + 1, relaxedCount, pushCount, popCount, 0, peakHeapSize);
+        }
+        return tree;
+    }
+
+    /**
+     * Builds the barely connected map with Kruskal's algorithm, taking the roads in
+     * (distance, id) order and keeping the ones that join two separate parts of the map.
+     * Since that order has no ties, the result has the same roads as buildBarelyConnectedMap.
+     *
+     * @return A RoadNetwork representing the barely connected map.
+     */
+    public RoadNetwork buildBarelyConnectedMapKruskal() {
+        RoadGraph graph = roadNetwork.getGraph();
+        DisjointSet parts = new DisjointSet(graph.cityCount());
+        int[] chosenRoads = new int[Math.max(0, graph.cityCount() - 1)];
+        int chosenCount = 0;
+        long scannedCount = 0;
+        for (int position = 0; position < graph.roadCount() && chosenCount < chosenRoads.length; position++) {
+            int road = graph.roadInOrder(position);
+            if (parts.union(graph.roadCity1(road), graph.roadCity2(road))) {
+                chosenRoads[chosenCount++] = road;
+            }
+            scannedCount++;
+        }
+        if (metrics != null) metrics.recordSearch(graph.cityCount(), scannedCount, 0, 0, 0, 0);
+        return graph.toRoadNetwork(Arrays.copyOf(chosenRoads, chosenCount));
+    }
+
+    /**
+     * Builds the barely connected map with Boruvka's algorithm. Every round finds, in parallel,
+     * the cheapest road leaving each part of the map, joins the parts along those roads and drops
+     * the roads that now lie inside one part. Roads are compared by their position in the
+     * (distance, id) order, so the result has the same roads as buildBarelyConnectedMap.
+     *
+     * @return A RoadNetwork representing the barely connected map.
+     */
+    public RoadNetwork buildBarelyConnectedMapBoruvka() {
+        RoadGraph graph = roadNetwork.getGraph();
+        int cityCount = graph.cityCount();
+        int[] positions = new int[graph.roadCount()];
+        IntStream.range(0, graph.roadCount()).parallel().forEach(position -> positions[graph.roadInOrder(position)] = position);
+
+        DisjointSet parts = new DisjointSet(cityCount);
+        int[] labels = new int[cityCount];
+        for (int city = 0; city < cityCount; city++) {
+            labels[city] = city;
+        }
+        int[] activeRoads = IntStream.range(0, graph.roadCount())
+                .filter(road -> graph.roadCity1(road) != graph.roadCity2(road)).toArray();
+        AtomicIntegerArray cheapest = new AtomicIntegerArray(cityCount);
+        int[] chosenRoads = new int[Math.max(0, cityCount - 1)];
+        int chosenCount = 0;
+
+        long scannedCount = 0;
+        while (activeRoads.length > 0) {
+            scannedCount += activeRoads.length;
+            for (int city = 0; city < cityCount; city++) {
+                cheapest.set(city, Integer.MAX_VALUE);
+            }
+            IntStream.of(activeRoads).parallel().forEach(road -> {
+                lowerTo(cheapest, labels[graph.roadCity1(road)], positions[road]);
+                lowerTo(cheapest, labels[graph.roadCity2(road)], positions[road]);
+            });
+
+            for (int part = 0; part < cityCount; part++) {
+                int position = cheapest.get(part);
+                if (position == Integer.MAX_VALUE) continue;
+                int road = graph.roadInOrder(position);
+                // Two parts may pick the same road; the second union is a no-op
+                if (parts.union(graph.roadCity1(road), graph.roadCity2(road))) {
+                    chosenRoads[chosenCount++] = road;
+                }
+            }
+
+            for (int city = 0; city < cityCount; city++) {
+                labels[city] = parts.find(city);
+            }
+            activeRoads = IntStream.of(activeRoads).parallel()
+                    .filter(road -> labels[graph.roadCity1(road)] != labels[graph.roadCity2(road)]).toArray();
+        }
+        if (metrics != null) metrics.recordSearch(cityCount, scannedCount, 0, 0, 0, 0);
+        return graph.toRoadNetwork(Arrays.copyOf(chosenRoads, chosenCount));
+    }
+
+    /**
+     * Builds the barely connected map like buildBarelyConnectedMapKruskal, but keeps it between
+     * calls. When the network was only changed through openRoad, closeRoad and setRoadDistance
+     * since the last call, the map is repaired instead of being built again: a removed map road
+     * is replaced by the cheapest road joining the two parts it leaves, and an added road replaces
+     * the most expensive road on the map route between its cities if it is cheaper. Since the
+     * (distance, id) order has no ties, the result has the same roads as a fresh build.
+     *
+     * @return A RoadNetwork representing the barely connected map.
+     */
+    public synchronized RoadNetwork updateBarelyConnectedMap() {
+        synchronized (roadNetwork) {
+            DynamicRoadGraph graph = roadNetwork.getDynamicGraph();
+            List<RoadUpdate> updates = graph == mapGraph ? roadNetwork.getUpdatesSince(mapVersion) : null;
+            mapVersion = roadNetwork.getVersion();
+            ensureMapCapacity(graph.cityCount());
+            if (updates == null) {
+                buildMap(graph);
+            } else {
+                BitSet addedRoads = new BitSet();
+                for (RoadUpdate update : updates) {
+                    if (update.getAddedIndex() >= 0) addedRoads.set(update.getAddedIndex());
+                }
+                for (RoadUpdate update : updates) {
+                    int removedRoad = update.getRemovedIndex();
+                    if (removedRoad >= 0 && mapRoads.get(removedRoad)) {
+                        disconnect(removedRoad);
+                        reconnect(graph.roadCity1(removedRoad), graph.roadCity2(removedRoad), addedRoads);
+                    }
+                }
+                for (int road = addedRoads.nextSetBit(0); road >= 0; road = addedRoads.nextSetBit(road + 1)) {
+                    if (graph.isOpen(road)) insert(road);
+                }
+            }
+
+            List<Road> roads = new ArrayList<>(mapRoads.cardinality());
+            for (int road = mapRoads.nextSetBit(0); road >= 0; road = mapRoads.nextSetBit(road + 1)) {
+                roads.add(graph.toRoad(road));
+            }
+            roads.sort(Road.DISTANCE_ORDER);
+            RoadNetwork barelyConnectedMap = new RoadNetwork();
+            for (Road road : roads) {
+                barelyConnectedMap.addRoad(road.getCity1(), road.getCity2(), road.getDistance(), road.getId(), road.getExtraWeights());
+            }
+            return barelyConnectedMap;
+        }
+    }
+
+    /**
+     * Builds the map from scratch with Kruskal's algorithm and roots every tree.
+     */
+    private void buildMap(DynamicRoadGraph graph) {
+        mapGraph = graph;
+        mapRoads = new BitSet(graph.roadCount());
+        Arrays.fill(mapDegrees, 0);
+        DisjointSet parts = new DisjointSet(graph.cityCount());
+        for (int road : graph.openRoadsInOrder()) {
+            if (parts.union(graph.roadCity1(road), graph.roadCity2(road))) {
+                mapRoads.set(road);
+                addToCity(graph.roadCity1(road), road);
+                addToCity(graph.roadCity2(road), road);
+            }
+        }
+        Arrays.fill(parentRoads, -1);
+        Arrays.fill(depths, -1);
+        for (int city = 0; city < graph.cityCount(); city++) {
+            if (depths[city] < 0) rootTree(city, -1, 0);
+        }
+    }
+
+    /**
+     * Makes the map arrays large enough for the cities that were added to the graph.
+     */
+    private void ensureMapCapacity(int cityCount) {
+        int oldCount = parentRoads.length;
+        if (cityCount <= oldCount) return;
+        int capacity = Math.max(cityCount, oldCount + (oldCount >> 1));
+        parentRoads = Arrays.copyOf(parentRoads, capacity);
+        Arrays.fill(parentRoads, oldCount, capacity, -1);
+        depths = Arrays.copyOf(depths, capacity);
+        mapAdjacency = Arrays.copyOf(mapAdjacency, capacity);
+        mapDegrees = Arrays.copyOf(mapDegrees, capacity);
+        partQueues = new int[][]{new int[capacity], new int[capacity]};
+        partMarks = new int[capacity];
+        partMark = 0;
+    }
+
+    /**
+     * Joins the two parts left by removing a map road with the cheapest road between them.
+     * Only the roads of the smaller part are scanned. Roads added since the last call are left
+     * out here; they are inserted afterwards.
+     */
+    private void reconnect(int city1, int city2, BitSet addedRoads) {
+        int side = smallerPart(city1, city2);
+        int[] part = partQueues[side];
+        int sideMark = partMark + side;
+        int cheapestRoad = -1;
+        int cheapestEnd = -1;
+        for (int i = 0; i < partSize; i++) {
+            int city = part[i];
+            int sorted = mapGraph.sortedDegree(city);
+            for (int j = 0, degree = mapGraph.degree(city); j < degree; j++) {
+                int road = mapGraph.roadAt(city, j);
+                if (!mapGraph.isOpen(road) || mapRoads.get(road) || addedRoads.get(road)
+                        || partMarks[mapGraph.otherCity(road, city)] == sideMark) continue;
+                if (cheapestRoad < 0 || mapGraph.compareRoads(road, cheapestRoad) < 0) {
+                    cheapestRoad = road;
+                    cheapestEnd = city;
+                }
+                // The base roads of a city are sorted, so the first one found is its cheapest
+                if (j < sorted) j = sorted - 1;
+            }
+        }
+        if (cheapestRoad >= 0) connect(cheapestRoad, cheapestEnd);
+    }
+
+    /**
+     * Finds the cities reachable on the map from each of two cities, searching both sides in
+     * turns so that the work is bounded by the smaller side. The cities of the smaller side are
+     * left in partQueues[side][0, partSize) and marked with partMark + side.
+     *
+     * @return The side that was searched completely: 0 for city1, 1 for city2.
+     */
+    private int smallerPart(int city1, int city2) {
+        if (partMark >= Integer.MAX_VALUE - 2) {
+            Arrays.fill(partMarks, 0);
+            partMark = 0;
+        }
+        partMark += 2;
+        int[] heads = {0, 0};
+        int[] tails = {1, 1};
+        partQueues[0][0] = city1;
+        partQueues[1][0] = city2;
+        partMarks[city1] = partMark;
+        partMarks[city2] = partMark + 1;
+        for (int side = 0; ; side = 1 - side) {
+            int[] queue = partQueues[side];
+            if (heads[side] == tails[side]) {
+                partSize = tails[side];
+                return side;
+            }
+            int city = queue[heads[side]++];
+            for (int i = 0; i < mapDegrees[city]; i++) {
+                int neighbor = mapGraph.otherCity(mapAdjacency[city][i], city);
+                if (partMarks[neighbor] != partMark + side) {
+                    partMarks[neighbor] = partMark + side;
+                    queue[tails[side]++] = neighbor;
+                }
+            }
+        }
+    }
+
+    /**
+     * Adds a road to the map, dropping the most expensive road of the cycle it closes if that
+     * road is more expensive than the new one. The cycle is found by walking up the rooted
+     * trees from both ends of the road, so only the map route between them is visited.
+     */
+    private void insert(int road) {
+        int city1 = mapGraph.roadCity1(road);
+        int city2 = mapGraph.roadCity2(road);
+        if (city1 == city2) return;
+        int mostExpensive = -1;
+        for (int first = city1, second = city2; first != second; ) {
+            int climber = depths[first] >= depths[second] ? first : second;
+            int parentRoad = parentRoads[climber];
+            if (parentRoad < 0) {
+                // Reached a root: the cities are in different trees
+                mostExpensive = -1;
+                break;
+            }
+            if (mostExpensive < 0 || mapGraph.compareRoads(parentRoad, mostExpensive) > 0) mostExpensive = parentRoad;
+            if (climber == first) {
+                first = mapGraph.otherCity(parentRoad, first);
+            } else {
+                second = mapGraph.otherCity(parentRoad, second);
+            }
+        }
+        if (mostExpensive >= 0) {
+            if (mapGraph.compareRoads(road, mostExpensive) > 0) return;
+            disconnect(mostExpensive);
+        }
+        connect(road, smallerPart(city1, city2) == 0 ? city1 : city2);
+    }
+
+    /**
+     * Adds a road between two trees of the map. The tree of the given end is rerooted at it and
+     * hung below the other end, so it should be the smaller tree.
+     */
+    private void connect(int road, int city) {
+        int otherCity = mapGraph.otherCity(road, city);
+        rootTree(city, road, depths[otherCity] + 1);
+        mapRoads.set(road);
+        addToCity(city, road);
+        addToCity(otherCity, road);
+    }
+
+    private void disconnect(int road) {
+        int city1 = mapGraph.roadCity1(road);
+        int city2 = mapGraph.roadCity2(road);
+        // The subtree below the road keeps its depths, which still differ by the right amounts
+        parentRoads[parentRoads[city1] == road ? city1 : city2] = -1;
+        mapRoads.clear(road);
+        removeFromCity(city1, road);
+        removeFromCity(city2, road);
+    }
+
+    /**
+     * Sets the parent roads and depths of the tree of a city, with the city as the root.
+     */
+    private void rootTree(int root, int parentRoad, int depth) {
+        int[] queue = partQueues[0];
+        parentRoads[root] = parentRoad;
+        depths[root] = depth;
+        queue[0] = root;
+        for (int head = 0, tail = 1; head < tail; head++) {
+            int city = queue[head];
+            for (int i = 0; i < mapDegrees[city]; i++) {
+                int road = mapAdjacency[city][i];
+                if (road == parentRoads[city]) continue;
+                int child = mapGraph.otherCity(road, city);
+                parentRoads[child] = road;
+                depths[child] = depths[city] + 1;
+                queue[tail++] = child;
+            }
+        }
+    }
+
+    private void addToCity(int city, int road) {
+        int[] roads = mapAdjacency[city];
+        if (roads == null) {
+            roads = mapAdjacency[city] = new int[2];
+        } else if (mapDegrees[city] == roads.length) {
+            roads = mapAdjacency[city] = Arrays.copyOf(roads, roads.length * 2);
+        }
+        roads[mapDegrees[city]++] = road;
+    }
+
+    private void removeFromCity(int city, int road) {
+        int[] roads = mapAdjacency[city];
+        for (int i = 0; i < mapDegrees[city]; i++) {
+            if (roads[i] == road) {
+                roads[i] = roads[--mapDegrees[city]];
+                return;
+            }
+        }
+    }
+
+    private static void lowerTo(AtomicIntegerArray values, int index, int value) {
+        int current = values.get(index);
+        while (value < current && !values.compareAndSet(index, current, value)) {
+            current = values.get(index);
         }
-        return barelyConnectedMap;
     }
 }
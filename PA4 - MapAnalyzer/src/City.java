@@ -6,20 +6,83 @@ import java.util.*;
 public class City {
     private final String name;
     private final List<Road> roads;
+    private final List<Road> roadView;
+    private boolean frozen;
 
     public City(String name) {
         this.name = name;
         this.roads = new ArrayList<>();
+        this.roadView = Collections.unmodifiableList(roads);
     }
 
     /**
-     * Adds a road to the city.
+     * Adds a road to the city, keeping the roads sorted by distance and then by id.
      *
      * @param road The road to be added.
      */
     public void addRoad(Road road) {
+        // Insert after the last road that is not greater, as a stable sort would
+        int low = 0;
+        int high = roads.size();
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (Road.DISTANCE_ORDER.compare(roads.get(middle), road) <= 0) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        roads.add(low, road);
+    }
+
+    /**
+     * Removes a road from the city.
+     *
+     * @param road The road to be removed.
+     * @return true if the road was found, false otherwise.
+     */
+    public boolean removeRoad(Road road) {
+        int low = 0;
+        int high = roads.size();
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (Road.DISTANCE_ORDER.compare(roads.get(middle), road) < 0) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        for (int i = low; i < roads.size() && Road.DISTANCE_ORDER.compare(roads.get(i), road) == 0; i++) {
+            if (roads.get(i) == road) {
+                roads.remove(i);
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Adds a road to the end of the road list without keeping it sorted.
+     * sortRoads must be called once all the roads are added.
+     *
+     * @param road The road to be added.
+     */
+    public void appendRoad(Road road) {
         roads.add(road);
-        roads.sort(Comparator.comparingInt(Road::getDistance).thenComparingInt(Road::getId));
+    }
+
+    /**
+     * Sorts the roads by distance and then by id.
+     */
+    public void sortRoads() {
+        roads.sort(Road.DISTANCE_ORDER);
+    }
+
+    /**
+     * Makes the road list read-only for the callers of getRoads.
+     */
+    public void freeze() {
+        frozen = true;
     }
 
     /**
@@ -37,6 +100,6 @@ public class City {
      * @return A list of roads.
      */
     public List<Road> getRoads() {
-        return roads;
+        return frozen ? roadView : roads;
     }
 }
@@ -0,0 +1,483 @@
+import java.util.*;
+
+/**
+ * Contraction Hierarchies over the compact road graph.
+ * Preprocessing contracts the cities one by one, cheapest first, and adds a shortcut whenever
+ * the only fastest route between two neighbors went through the contracted city. A query then
+ * runs a bidirectional Dijkstra that only follows roads and shortcuts towards higher ranked
+ * cities, and unpacks the shortcuts of the result back to the original roads.
+ * Queries may run from several threads at once.
+ */
+public class ContractionHierarchy implements RouteFinder {
+    // Witness searches are cut short to keep preprocessing fast; a cheaper limit is enough to rank cities
+    private static final int WITNESS_SETTLE_LIMIT = 150;
+    private static final int SIMULATION_SETTLE_LIMIT = 20;
+
+    private final RoadGraph graph;
+
+    // Roads and shortcuts; shortcuts have a via city and two child edges, roads have a road index
+    private int edgeCount;
+    private int[] edgeCity1;
+    private int[] edgeCity2;
+    private int[] edgeWeights;
+    private int[] edgeVia;
+    private int[] edgeChild1;
+    private int[] edgeChild2;
+    private int[] edgeRoads;
+
+    private int[] ranks;
+
+    // Upward graph: every edge stored once, at its lower ranked end
+    private int[] upOffsets;
+    private int[] upTargets;
+    private int[] upWeights;
+    private int[] upEdges;
+
+    private final ThreadLocal<QueryState> queryStates;
+
+    private ContractionHierarchy(RoadGraph graph) {
+        this.graph = graph;
+        this.queryStates = ThreadLocal.withInitial(() -> new QueryState(graph.cityCount()));
+    }
+
+    /**
+     * Builds the hierarchy of a graph.
+     *
+     * @param graph The compact graph.
+     * @return The contraction hierarchy.
+     */
+    public static ContractionHierarchy build(RoadGraph graph) {
+        ContractionHierarchy hierarchy = new ContractionHierarchy(graph);
+        new Contractor(hierarchy).contractAll();
+        hierarchy.buildUpwardGraph();
+        return hierarchy;
+    }
+
+    /**
+     * Gets the number of shortcuts added during preprocessing.
+     *
+     * @return The number of shortcuts.
+     */
+    public int shortcutCount() {
+        int shortcuts = 0;
+        for (int e = 0; e < edgeCount; e++) {
+            if (edgeVia[e] >= 0) shortcuts++;
+        }
+        return shortcuts;
+    }
+
+    /**
+     * Gets the number of cities settled by the last query of the calling thread.
+     *
+     * @return The number of settled cities.
+     */
+    @Override
+    public int getSettledCount() {
+        return queryStates.get().settledCount;
+    }
+
+    /**
+     * Finds the fastest route between two cities. The route has the same length as the one of
+     * ShortestPathFinder, but when several fastest routes exist a different one may be returned.
+     *
+     * @param startCity The starting city.
+     * @param endCity   The ending city.
+     * @return A RoadNetwork representing the fastest route.
+     */
+    @Override
+    public RoadNetwork findFastestRoute(String startCity, String endCity) {
+        int start = graph.cityId(startCity);
+        int end = graph.cityId(endCity);
+        queryStates.get().settledCount = 0;
+        if (start < 0 || end < 0 || !graph.components().connected(start, end)) return new RoadNetwork();
+        int[] roads = findRoute(start, end);
+        return roads == null ? new RoadNetwork() : graph.toRoadNetwork(roads);
+    }
+
+    /**
+     * Finds the fastest route between two cities.
+     *
+     * @param start The id of the starting city.
+     * @param end   The id of the ending city.
+     * @return The road indexes of the route in travel order, or null if the end city is unreachable.
+     */
+    public int[] findRoute(int start, int end) {
+        QueryState state = queryStates.get();
+        state.reset();
+        state.reach(0, start, 0, -1);
+        state.reach(1, end, 0, -1);
+
+        long best = Long.MAX_VALUE;
+        int meetingCity = -1;
+        while (true) {
+            boolean forwardDone = state.queues[0].isEmpty() || IndexedMinHeap.distance(state.queues[0].peekKey()) >= best;
+            boolean backwardDone = state.queues[1].isEmpty() || IndexedMinHeap.distance(state.queues[1].peekKey()) >= best;
+            if (forwardDone && backwardDone) break;
+            int side = backwardDone || (!forwardDone && state.queues[0].peekKey() <= state.queues[1].peekKey()) ? 0 : 1;
+
+            int city = state.queues[side].poll();
+            state.settledCount++;
+            int[] ownDistances = state.distances[side];
+            int otherDistance = state.distances[1 - side][city];
+            if (otherDistance != Integer.MAX_VALUE && (long) ownDistances[city] + otherDistance < best) {
+                best = (long) ownDistances[city] + otherDistance;
+                meetingCity = city;
+            }
+            for (int slot = upOffsets[city]; slot < upOffsets[city + 1]; slot++) {
+                state.reach(side, upTargets[slot], ownDistances[city] + upWeights[slot], upEdges[slot]);
+            }
+        }
+        if (meetingCity < 0) return null;
+
+        List<Integer> roads = new ArrayList<>();
+        List<Integer> forwardEdges = new ArrayList<>();
+        for (int city = meetingCity; city != start; city = otherEnd(state.previousEdges[0][city], city)) {
+            forwardEdges.add(state.previousEdges[0][city]);
+        }
+        int from = start;
+        for (int i = forwardEdges.size() - 1; i >= 0; i--) {
+            unpack(forwardEdges.get(i), from, roads);
+            from = otherEnd(forwardEdges.get(i), from);
+        }
+        for (int city = meetingCity; city != end; ) {
+            int edge = state.previousEdges[1][city];
+            unpack(edge, city, roads);
+            city = otherEnd(edge, city);
+        }
+        return roads.stream().mapToInt(Integer::intValue).toArray();
+    }
+
+    /**
+     * Appends the original roads of an edge, traversed starting at the given city.
+     */
+    private void unpack(int edge, int from, List<Integer> roads) {
+        Deque<int[]> stack = new ArrayDeque<>();
+        stack.push(new int[]{edge, from});
+        while (!stack.isEmpty()) {
+            int[] top = stack.pop();
+            int e = top[0];
+            int city = top[1];
+            if (edgeVia[e] < 0) {
+                roads.add(edgeRoads[e]);
+                continue;
+            }
+            // Child 1 joins edgeCity1 and the via city, child 2 joins the via city and edgeCity2
+            int first = city == edgeCity1[e] ? edgeChild1[e] : edgeChild2[e];
+            int second = city == edgeCity1[e] ? edgeChild2[e] : edgeChild1[e];
+            stack.push(new int[]{second, edgeVia[e]});
+            stack.push(new int[]{first, city});
+        }
+    }
+
+    private int otherEnd(int edge, int city) {
+        return edgeCity1[edge] == city ? edgeCity2[edge] : edgeCity1[edge];
+    }
+
+    private int addEdge(int city1, int city2, int weight, int via, int child1, int child2, int road) {
+        if (edgeCount == edgeCity1.length) {
+            int capacity = Math.max(16, edgeCount * 2);
+            edgeCity1 = Arrays.copyOf(edgeCity1, capacity);
+            edgeCity2 = Arrays.copyOf(edgeCity2, capacity);
+            edgeWeights = Arrays.copyOf(edgeWeights, capacity);
+            edgeVia = Arrays.copyOf(edgeVia, capacity);
+            edgeChild1 = Arrays.copyOf(edgeChild1, capacity);
+            edgeChild2 = Arrays.copyOf(edgeChild2, capacity);
+            edgeRoads = Arrays.copyOf(edgeRoads, capacity);
+        }
+        edgeCity1[edgeCount] = city1;
+        edgeCity2[edgeCount] = city2;
+        edgeWeights[edgeCount] = weight;
+        edgeVia[edgeCount] = via;
+        edgeChild1[edgeCount] = child1;
+        edgeChild2[edgeCount] = child2;
+        edgeRoads[edgeCount] = road;
+        return edgeCount++;
+    }
+
+    private void buildUpwardGraph() {
+        int cityCount = graph.cityCount();
+        upOffsets = new int[cityCount + 1];
+        for (int e = 0; e < edgeCount; e++) {
+            if (edgeCity1[e] == edgeCity2[e]) continue;
+            upOffsets[lowerEnd(e) + 1]++;
+        }
+        for (int c = 0; c < cityCount; c++) {
+            upOffsets[c + 1] += upOffsets[c];
+        }
+        int[] next = Arrays.copyOf(upOffsets, cityCount);
+        upTargets = new int[upOffsets[cityCount]];
+        upWeights = new int[upOffsets[cityCount]];
+        upEdges = new int[upOffsets[cityCount]];
+        for (int e = 0; e < edgeCount; e++) {
+            if (edgeCity1[e] == edgeCity2[e]) continue;
+            int low = lowerEnd(e);
+            int slot = next[low]++;
+            upTargets[slot] = otherEnd(e, low);
+            upWeights[slot] = edgeWeights[e];
+            upEdges[slot] = e;
+        }
+    }
+
+    private int lowerEnd(int edge) {
+        return ranks[edgeCity1[edge]] < ranks[edgeCity2[edge]] ? edgeCity1[edge] : edgeCity2[edge];
+    }
+
+    /**
+     * Per-thread search state of a query. Only the touched cities are reset between queries.
+     */
+    private static class QueryState {
+        private final IndexedMinHeap[] queues;
+        private final int[][] distances;
+        private final int[][] previousEdges;
+        private final int[] touched;
+        private int touchedCount;
+        private int settledCount;
+
+        QueryState(int cityCount) {
+            queues = new IndexedMinHeap[]{new IndexedMinHeap(cityCount), new IndexedMinHeap(cityCount)};
+            distances = new int[][]{new int[cityCount], new int[cityCount]};
+            previousEdges = new int[][]{new int[cityCount], new int[cityCount]};
+            touched = new int[2 * cityCount];
+            Arrays.fill(distances[0], Integer.MAX_VALUE);
+            Arrays.fill(distances[1], Integer.MAX_VALUE);
+        }
+
+        void reset() {
+            for (int i = 0; i < touchedCount; i++) {
+                distances[0][touched[i]] = Integer.MAX_VALUE;
+                distances[1][touched[i]] = Integer.MAX_VALUE;
+            }
+            touchedCount = 0;
+            settledCount = 0;
+            queues[0].clear();
+            queues[1].clear();
+        }
+
+        void reach(int side, int city, int distance, int edge) {
+            if (distance >= distances[side][city]) return;
+            if (distances[0][city] == Integer.MAX_VALUE && distances[1][city] == Integer.MAX_VALUE) {
+                touched[touchedCount++] = city;
+            }
+            distances[side][city] = distance;
+            previousEdges[side][city] = edge;
+            queues[side].push(city, IndexedMinHeap.key(distance, 0));
+        }
+    }
+
+    /**
+     * Preprocessing state: the remaining graph, the witness search and the contraction order.
+     */
+    private static class Contractor {
+        private final ContractionHierarchy hierarchy;
+        private final int cityCount;
+        private final int[][] adjacency;
+        private final int[] degrees;
+        private final boolean[] contracted;
+        private final int[] contractedNeighbors;
+
+        // Witness search
+        private final IndexedMinHeap witnessQueue;
+        private final int[] witnessDistances;
+        private final int[] witnessTouched;
+        private int witnessTouchedCount;
+
+        // Neighbors of the city being contracted, with the lightest edge to each
+        private final int[] neighborEdges;
+        private final int[] neighbors;
+        private int lastNeighborCount;
+
+        Contractor(ContractionHierarchy hierarchy) {
+            this.hierarchy = hierarchy;
+            RoadGraph graph = hierarchy.graph;
+            cityCount = graph.cityCount();
+            adjacency = new int[cityCount][];
+            degrees = new int[cityCount];
+            contracted = new boolean[cityCount];
+            contractedNeighbors = new int[cityCount];
+            witnessQueue = new IndexedMinHeap(cityCount);
+            witnessDistances = new int[cityCount];
+            witnessTouched = new int[cityCount];
+            neighborEdges = new int[cityCount];
+            neighbors = new int[cityCount];
+            Arrays.fill(witnessDistances, Integer.MAX_VALUE);
+            Arrays.fill(neighborEdges, -1);
+
+            hierarchy.edgeCity1 = new int[0];
+            hierarchy.edgeCity2 = new int[0];
+            hierarchy.edgeWeights = new int[0];
+            hierarchy.edgeVia = new int[0];
+            hierarchy.edgeChild1 = new int[0];
+            hierarchy.edgeChild2 = new int[0];
+            hierarchy.edgeRoads = new int[0];
+            for (int city = 0; city < cityCount; city++) {
+                adjacency[city] = new int[graph.endEdge(city) - graph.firstEdge(city)];
+            }
+            for (int road = 0; road < graph.roadCount(); road++) {
+                int city1 = graph.roadCity1(road);
+                int city2 = graph.roadCity2(road);
+                if (city1 == city2) continue;
+                int edge = hierarchy.addEdge(city1, city2, graph.roadDistance(road), -1, -1, -1, road);
+                adjacency[city1][degrees[city1]++] = edge;
+                adjacency[city2][degrees[city2]++] = edge;
+            }
+        }
+
+        void contractAll() {
+            hierarchy.ranks = new int[cityCount];
+            PriorityQueue<long[]> order = new PriorityQueue<>(Comparator.<long[]>comparingLong(entry -> entry[0])
+                    .thenComparingLong(entry -> entry[1]));
+            for (int city = 0; city < cityCount; city++) {
+                order.add(new long[]{priority(city), city});
+            }
+            int rank = 0;
+            while (!order.isEmpty()) {
+                int city = (int) order.poll()[1];
+                // Priorities of neighbors go stale as cities are contracted, so check again before contracting
+                long current = priority(city);
+                if (!order.isEmpty() && current > order.peek()[0]) {
+                    order.add(new long[]{current, city});
+                    continue;
+                }
+                contract(city, false);
+                contracted[city] = true;
+                hierarchy.ranks[city] = rank++;
+                dropContractedEdges(city);
+            }
+        }
+
+        /**
+         * Edge difference plus the number of already contracted neighbors, which keeps the
+         * contraction spread evenly over the map.
+         */
+        private long priority(int city) {
+            int shortcuts = contract(city, true);
+            return (long) shortcuts - lastNeighborCount + contractedNeighbors[city];
+        }
+
+        /**
+         * Adds, or only counts, the shortcuts needed to contract a city.
+         */
+        private int contract(int city, boolean simulate) {
+            int neighborCount = collectNeighbors(city);
+            lastNeighborCount = neighborCount;
+            int shortcuts = 0;
+            for (int i = 0; i < neighborCount; i++) {
+                int from = neighbors[i];
+                int fromEdge = neighborEdges[from];
+                int fromWeight = hierarchy.edgeWeights[fromEdge];
+                int maxDistance = -1;
+                for (int j = i + 1; j < neighborCount; j++) {
+                    maxDistance = Math.max(maxDistance, fromWeight + hierarchy.edgeWeights[neighborEdges[neighbors[j]]]);
+                }
+                if (maxDistance < 0) continue;
+                witnessSearch(from, city, maxDistance, simulate ? SIMULATION_SETTLE_LIMIT : WITNESS_SETTLE_LIMIT);
+                for (int j = i + 1; j < neighborCount; j++) {
+                    int to = neighbors[j];
+                    int toEdge = neighborEdges[to];
+                    int viaDistance = fromWeight + hierarchy.edgeWeights[toEdge];
+                    if (witnessDistances[to] <= viaDistance) continue;
+                    shortcuts++;
+                    if (!simulate) {
+                        int shortcut = hierarchy.addEdge(from, to, viaDistance, city, fromEdge, toEdge, -1);
+                        append(from, shortcut);
+                        append(to, shortcut);
+                    }
+                }
+                clearWitness();
+            }
+            if (!simulate) {
+                for (int i = 0; i < neighborCount; i++) {
+                    contractedNeighbors[neighbors[i]]++;
+                }
+            }
+            clearNeighbors(neighborCount);
+            return shortcuts;
+        }
+
+        private int collectNeighbors(int city) {
+            int neighborCount = 0;
+            for (int i = 0; i < degrees[city]; i++) {
+                int edge = adjacency[city][i];
+                int neighbor = hierarchy.otherEnd(edge, city);
+                if (contracted[neighbor]) continue;
+                if (neighborEdges[neighbor] < 0) {
+                    neighbors[neighborCount++] = neighbor;
+                    neighborEdges[neighbor] = edge;
+                } else if (hierarchy.edgeWeights[edge] < hierarchy.edgeWeights[neighborEdges[neighbor]]) {
+                    neighborEdges[neighbor] = edge;
+                }
+            }
+            return neighborCount;
+        }
+
+        private void clearNeighbors(int neighborCount) {
+            for (int i = 0; i < neighborCount; i++) {
+                neighborEdges[neighbors[i]] = -1;
+            }
+        }
+
+        /**
+         * Dijkstra from a neighbor over the remaining graph without the contracted city, stopped at
+         * the longest route through it or after a fixed number of settled cities. Stopping early can
+         * only add unneeded shortcuts, never miss a needed one.
+         */
+        private void witnessSearch(int source, int excluded, int maxDistance, int settleLimit) {
+            touchWitness(source, 0);
+            witnessQueue.push(source, IndexedMinHeap.key(0, 0));
+            int settled = 0;
+            while (!witnessQueue.isEmpty() && settled++ < settleLimit) {
+                int city = witnessQueue.poll();
+                int distance = witnessDistances[city];
+                if (distance > maxDistance) break;
+                for (int i = 0; i < degrees[city]; i++) {
+                    int edge = adjacency[city][i];
+                    int neighbor = hierarchy.otherEnd(edge, city);
+                    if (neighbor == excluded || contracted[neighbor]) continue;
+                    int newDistance = distance + hierarchy.edgeWeights[edge];
+                    if (newDistance < witnessDistances[neighbor]) {
+                        touchWitness(neighbor, newDistance);
+                        witnessQueue.push(neighbor, IndexedMinHeap.key(newDistance, 0));
+                    }
+                }
+            }
+        }
+
+        private void touchWitness(int city, int distance) {
+            if (witnessDistances[city] == Integer.MAX_VALUE) {
+                witnessTouched[witnessTouchedCount++] = city;
+            }
+            witnessDistances[city] = distance;
+        }
+
+        private void clearWitness() {
+            for (int i = 0; i < witnessTouchedCount; i++) {
+                witnessDistances[witnessTouched[i]] = Integer.MAX_VALUE;
+            }
+            witnessTouchedCount = 0;
+            witnessQueue.clear();
+        }
+
+        /**
+         * Removes the edges of a contracted city from its neighbors, so later searches skip them.
+         */
+        private void dropContractedEdges(int city) {
+            for (int i = 0; i < degrees[city]; i++) {
+                int neighbor = hierarchy.otherEnd(adjacency[city][i], city);
+                if (contracted[neighbor]) continue;
+                int kept = 0;
+                for (int j = 0; j < degrees[neighbor]; j++) {
+                    int edge = adjacency[neighbor][j];
+                    if (!contracted[hierarchy.otherEnd(edge, neighbor)]) adjacency[neighbor][kept++] = edge;
+                }
+                degrees[neighbor] = kept;
+            }
+        }
+
+        private void append(int city, int edge) {
+            if (degrees[city] == adjacency[city].length) {
+                adjacency[city] = Arrays.copyOf(adjacency[city], Math.max(4, degrees[city] * 2));
+            }
+            adjacency[city][degrees[city]++] = edge;
+        }
+    }
+}
@@ -0,0 +1,61 @@
+/**
+ * Disjoint sets of city ids, with path compression and union by rank.
+ */
+public class DisjointSet {
+    private final int[] parents;
+    private final byte[] ranks;
+
+    /**
+     * Creates one set for every city.
+     *
+     * @param size The number of cities.
+     */
+    public DisjointSet(int size) {
+        parents = new int[size];
+        ranks = new byte[size];
+        for (int i = 0; i < size; i++) {
+            parents[i] = i;
+        }
+    }
+
+    /**
+     * Finds the representative of the set of a city.
+     *
+     * @param city The city id.
+     * @return The representative city id.
+     */
+    public int find(int city) {
+        int root = city;
+        while (parents[root] != root) {
+            root = parents[root];
+        }
+        while (parents[city] != root) {
+            int next = parents[city];
+            parents[city] = root;
+            city = next;
+        }
+        return root;
+    }
+
+    /**
+     * Joins the sets of two cities.
+     *
+     * @param city1 The first city id.
+     * @param city2 The second city id.
+     * @return true if the cities were in different sets, false otherwise.
+     */
+    public boolean union(int city1, int city2) {
+        int root1 = find(city1);
+        int root2 = find(city2);
+        if (root1 == root2) return false;
+        if (ranks[root1] < ranks[root2]) {
+            parents[root1] = root2;
+        } else if (ranks[root1] > ranks[root2]) {
+            parents[root2] = root1;
+        } else {
+            parents[root2] = root1;
+            ranks[root1]++;
+        }
+        return true;
+    }
+}
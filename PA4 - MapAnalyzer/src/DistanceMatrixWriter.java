@@ -0,0 +1,114 @@
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.IntStream;
+
+/**
+ * Writes the length of the fastest route between every pair of cities, on the original map
+ * and on the barely connected map. One Dijkstra search per source city runs on the fork-join
+ * pool; the rows are computed a block of sources at a time and written in order, so only
+ * one block is held in memory.
+ * <p>
+ * A file ending in ".csv" gets one "source,target,original,barely_connected" line per pair of
+ * cities, with an empty field when there is no route. Any other file gets the binary form: the
+ * magic "DMX1", the city count, the city names (byte length and UTF-8 bytes each) and then one
+ * row per source city with the original distances followed by the barely connected ones, as
+ * big-endian ints with -1 for no route.
+ */
+public class DistanceMatrixWriter {
+    private static final int MAGIC = 0x444D5831; // "DMX1"
+
+    private final RoadGraph graph;
+    private final RoadGraph barelyConnectedGraph;
+    private final int[] barelyConnectedIds; // Id in barelyConnectedGraph of each city of graph
+
+    public DistanceMatrixWriter(RoadNetwork roadNetwork, RoadNetwork barelyConnectedMap) {
+        this.graph = roadNetwork.getGraph();
+        this.barelyConnectedGraph = barelyConnectedMap.getGraph();
+        this.barelyConnectedIds = new int[graph.cityCount()];
+        for (int city = 0; city < graph.cityCount(); city++) {
+            barelyConnectedIds[city] = barelyConnectedGraph.cityId(graph.cityName(city));
+        }
+    }
+
+    /**
+     * Writes the distance matrix.
+     *
+     * @param file The output file.
+     * @throws IOException If the file cannot be written.
+     */
+    public void write(File file) throws IOException {
+        boolean csv = file.getName().endsWith(".csv");
+        int cityCount = graph.cityCount();
+        int blockSize = 4 * ForkJoinPool.getCommonPoolParallelism();
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file), 1 << 16))) {
+            if (csv) {
+                out.write("source,target,original,barely_connected\n".getBytes(StandardCharsets.UTF_8));
+            } else {
+                out.writeInt(MAGIC);
+                out.writeInt(cityCount);
+                for (int city = 0; city < cityCount; city++) {
+                    byte[] name = graph.cityName(city).getBytes(StandardCharsets.UTF_8);
+                    out.writeInt(name.length);
+                    out.write(name);
+                }
+            }
+
+            for (int blockStart = 0; blockStart < cityCount; blockStart += blockSize) {
+                int blockEnd = Math.min(cityCount, blockStart + blockSize);
+                int[][] rows = IntStream.range(blockStart, blockEnd).parallel().mapToObj(this::row).toArray(int[][]::new);
+                for (int i = 0; i < rows.length; i++) {
+                    if (csv) {
+                        writeCsvRow(out, blockStart + i, rows[i]);
+                    } else {
+                        for (int distance : rows[i]) {
+                            out.writeInt(distance);
+                        }
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Computes the distances from a city to every city, on the original map and then on the barely connected map.
+     */
+    private int[] row(int source) {
+        int cityCount = graph.cityCount();
+        int[] row = new int[2 * cityCount];
+        int[] distances = ShortestPathFinder.distancesFrom(graph, source);
+        int barelyConnectedSource = barelyConnectedIds[source];
+        int[] barelyConnectedDistances = barelyConnectedSource < 0 ? null
+                : ShortestPathFinder.distancesFrom(barelyConnectedGraph, barelyConnectedSource);
+        for (int city = 0; city < cityCount; city++) {
+            row[city] = distances[city] == Integer.MAX_VALUE ? -1 : distances[city];
+            int barelyConnectedCity = city == source ? barelyConnectedSource : barelyConnectedIds[city];
+            int distance = barelyConnectedSource < 0 || barelyConnectedCity < 0 ? Integer.MAX_VALUE
+                    : barelyConnectedDistances[barelyConnectedCity];
+            row[cityCount + city] = city == source ? 0 : distance == Integer.MAX_VALUE ? -1 : distance;
+        }
+        return row;
+    }
+
+    /**
+     * Writes the pairs of a source city with the cities after it, since the distances are symmetric.
+     */
+    private void writeCsvRow(DataOutputStream out, int source, int[] row) throws IOException {
+        int cityCount = graph.cityCount();
+        StringBuilder line = new StringBuilder();
+        for (int target = source + 1; target < cityCount; target++) {
+            line.setLength(0);
+            line.append(csvField(graph.cityName(source))).append(',').append(csvField(graph.cityName(target))).append(',');
+            if (row[target] >= 0) line.append(row[target]);
+            line.append(',');
+            if (row[cityCount + target] >= 0) line.append(row[cityCount + target]);
+            line.append('\n');
+            out.write(line.toString().getBytes(StandardCharsets.UTF_8));
+        }
+    }
+
+    private static String csvField(String value) {
+        if (value.indexOf(',') < 0 && value.indexOf('"') < 0) return value;
+        return '"' + value.replace("\"", "\"\"") + '"';
+    }
+}
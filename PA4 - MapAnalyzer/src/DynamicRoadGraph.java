@@ -0,0 +1,331 @@
+import java.util.*;
+
+/**
+ * A road graph that can change: a RoadGraph as the base, with the roads closed since then
+ * marked in a bitset and the roads opened since then appended after the base roads.
+ * Cities and roads keep their ids and indexes while the graph changes, so results kept in
+ * int arrays stay valid and only have to be repaired around the changed roads.
+ * The roads of a city are its base roads, sorted by distance and then id, followed by the
+ * roads opened later in the order they were opened. Closed roads stay in the lists and must
+ * be skipped with isOpen.
+ */
+public class DynamicRoadGraph {
+    private final RoadGraph base;
+    private final int baseCityCount;
+    private final int baseRoadCount;
+    private final int stride;
+
+    // Cities that were not in the base graph
+    private final List<String> addedCityNames = new ArrayList<>();
+    private final Map<String, Integer> addedCityIds = new HashMap<>();
+
+    // Roads opened after the base graph was built, indexed from baseRoadCount
+    private int[] addedCity1 = new int[16];
+    private int[] addedCity2 = new int[16];
+    private int[] addedDistances = new int[16];
+    private int[] addedIds = new int[16];
+    private int[] addedExtraWeights;
+    private int addedCount;
+
+    // The roads opened later at every city
+    private int[][] addedAdjacency;
+    private int[] addedDegrees;
+
+    private final BitSet closedRoads = new BitSet();
+    private int closedCount;
+    private final Map<Integer, Integer> openRoadIndexes;
+
+    /**
+     * Creates a changeable graph with a built graph as the base.
+     *
+     * @param base The graph of the network as it is now.
+     */
+    public DynamicRoadGraph(RoadGraph base) {
+        this.base = base;
+        this.baseCityCount = base.cityCount();
+        this.baseRoadCount = base.roadCount();
+        this.stride = base.criterionCount() - 1;
+        this.addedExtraWeights = new int[16 * stride];
+        this.addedAdjacency = new int[baseCityCount][];
+        this.addedDegrees = new int[baseCityCount];
+        this.openRoadIndexes = new HashMap<>(baseRoadCount * 2);
+        for (int road = 0; road < baseRoadCount; road++) {
+            openRoadIndexes.put(base.roadIdOf(road), road);
+        }
+    }
+
+    /**
+     * Gets the number of cities, including the ones only reached by roads opened later.
+     * @return The number of cities.
+     */
+    public int cityCount() {
+        return baseCityCount + addedCityNames.size();
+    }
+
+    /**
+     * Gets the number of road indexes in use, including the closed roads.
+     * @return The number of road indexes.
+     */
+    public int roadCount() {
+        return baseRoadCount + addedCount;
+    }
+
+    /**
+     * Gets the number of roads that were closed and still hold an index.
+     * @return The number of closed roads.
+     */
+    public int closedCount() {
+        return closedCount;
+    }
+
+    /**
+     * Gets the id of a city.
+     * @param name The name of the city.
+     * @return The city id, or -1 if the graph has no such city.
+     */
+    public int cityId(String name) {
+        int city = base.cityId(name);
+        if (city >= 0) return city;
+        Integer added = addedCityIds.get(name);
+        return added == null ? -1 : added;
+    }
+
+    /**
+     * Gets the name of a city.
+     * @param city The city id.
+     * @return The name.
+     */
+    public String cityName(int city) {
+        return city < baseCityCount ? base.cityName(city) : addedCityNames.get(city - baseCityCount);
+    }
+
+    /**
+     * Gets the index of the open road with an id.
+     * @param id The road id.
+     * @return The road index, or -1 if there is no open road with the id.
+     */
+    public int roadIndex(int id) {
+        Integer road = openRoadIndexes.get(id);
+        return road == null ? -1 : road;
+    }
+
+    /**
+     * Checks if a road is still open.
+     * @param road The road index.
+     * @return true if the road was not closed.
+     */
+    public boolean isOpen(int road) {
+        return !closedRoads.get(road);
+    }
+
+    /**
+     * Gets the number of roads at a city, including the closed ones.
+     * @param city The city id.
+     * @return The number of roads.
+     */
+    public int degree(int city) {
+        int degree = addedDegrees[city];
+        if (city < baseCityCount) degree += base.endEdge(city) - base.firstEdge(city);
+        return degree;
+    }
+
+    /**
+     * Gets the number of roads at a city that come from the base graph. These are the first
+     * roads of the city and are sorted by distance and then id.
+     * @param city The city id.
+     * @return The number of sorted roads.
+     */
+    public int sortedDegree(int city) {
+        return city < baseCityCount ? base.endEdge(city) - base.firstEdge(city) : 0;
+    }
+
+    /**
+     * Gets a road of a city.
+     * @param city  The city id.
+     * @param index The position of the road, from 0 to degree(city).
+     * @return The road index.
+     */
+    public int roadAt(int city, int index) {
+        int sorted = sortedDegree(city);
+        return index < sorted ? base.road(base.firstEdge(city) + index) : addedAdjacency[city][index - sorted];
+    }
+
+    /**
+     * Gets one end of a road.
+     * @param road The road index.
+     * @return The city id.
+     */
+    public int roadCity1(int road) {
+        return road < baseRoadCount ? base.roadCity1(road) : addedCity1[road - baseRoadCount];
+    }
+
+    /**
+     * Gets the other end of a road.
+     * @param road The road index.
+     * @return The city id.
+     */
+    public int roadCity2(int road) {
+        return road < baseRoadCount ? base.roadCity2(road) : addedCity2[road - baseRoadCount];
+    }
+
+    /**
+     * Gets the city at the other end of a road.
+     * @param road The road index.
+     * @param city The id of one end of the road.
+     * @return The id of the other end.
+     */
+    public int otherCity(int road, int city) {
+        int city1 = roadCity1(road);
+        return city1 == city ? roadCity2(road) : city1;
+    }
+
+    /**
+     * Gets the distance of a road.
+     * @param road The road index.
+     * @return The distance.
+     */
+    public int roadDistance(int road) {
+        return road < baseRoadCount ? base.roadDistance(road) : addedDistances[road - baseRoadCount];
+    }
+
+    /**
+     * Gets a cost of a road.
+     * @param road      The road index.
+     * @param criterion 0 for the distance, 1 and up for the other costs.
+     * @return The cost, 0 if the road has no such cost.
+     */
+    public int roadWeight(int road, int criterion) {
+        if (road < baseRoadCount) return criterion > stride ? 0 : base.roadWeight(road, criterion);
+        if (criterion == 0) return addedDistances[road - baseRoadCount];
+        return criterion > stride ? 0 : addedExtraWeights[(road - baseRoadCount) * stride + criterion - 1];
+    }
+
+    /**
+     * Gets the id of a road.
+     * @param road The road index.
+     * @return The road id.
+     */
+    public int roadIdOf(int road) {
+        return road < baseRoadCount ? base.roadIdOf(road) : addedIds[road - baseRoadCount];
+    }
+
+    /**
+     * Compares two roads by distance and then by id, the order the maps are built in.
+     * @param road1 The first road index.
+     * @param road2 The second road index.
+     * @return A negative number, zero or a positive number as the first road comes first.
+     */
+    public int compareRoads(int road1, int road2) {
+        int byDistance = Integer.compare(roadDistance(road1), roadDistance(road2));
+        return byDistance != 0 ? byDistance : Integer.compare(roadIdOf(road1), roadIdOf(road2));
+    }
+
+    /**
+     * Creates the Road view of a road, for output.
+     * @param road The road index.
+     * @return The road object.
+     */
+    public Road toRoad(int road) {
+        if (road < baseRoadCount) return base.toRoad(road);
+        int added = road - baseRoadCount;
+        int[] extraWeights = stride == 0 ? Road.NO_EXTRA_WEIGHTS
+                : Arrays.copyOfRange(addedExtraWeights, added * stride, (added + 1) * stride);
+        return new Road(cityName(addedCity1[added]), cityName(addedCity2[added]), addedDistances[added], addedIds[added], extraWeights);
+    }
+
+    /**
+     * Gets the open roads sorted by distance and then id.
+     * @return The road indexes.
+     */
+    public int[] openRoadsInOrder() {
+        int[] order = new int[roadCount() - closedCount];
+        Integer[] added = new Integer[addedCount];
+        int addedOpen = 0;
+        for (int i = 0; i < addedCount; i++) {
+            if (isOpen(baseRoadCount + i)) added[addedOpen++] = baseRoadCount + i;
+        }
+        Arrays.sort(added, 0, addedOpen, this::compareRoads);
+        // Merge the sorted base roads with the sorted roads opened later
+        int count = 0;
+        int next = 0;
+        for (int position = 0; position < baseRoadCount; position++) {
+            int road = base.roadInOrder(position);
+            if (!isOpen(road)) continue;
+            while (next < addedOpen && compareRoads(added[next], road) < 0) {
+                order[count++] = added[next++];
+            }
+            order[count++] = road;
+        }
+        while (next < addedOpen) {
+            order[count++] = added[next++];
+        }
+        return order;
+    }
+
+    /**
+     * Opens a road.
+     * @param road The road.
+     * @return The index of the new road.
+     */
+    public int openRoad(Road road) {
+        int city1 = addCity(road.getCity1());
+        int city2 = addCity(road.getCity2());
+        if (addedCount == addedIds.length) {
+            int capacity = addedCount * 2;
+            addedCity1 = Arrays.copyOf(addedCity1, capacity);
+            addedCity2 = Arrays.copyOf(addedCity2, capacity);
+            addedDistances = Arrays.copyOf(addedDistances, capacity);
+            addedIds = Arrays.copyOf(addedIds, capacity);
+            addedExtraWeights = Arrays.copyOf(addedExtraWeights, capacity * stride);
+        }
+        addedCity1[addedCount] = city1;
+        addedCity2[addedCount] = city2;
+        addedDistances[addedCount] = road.getDistance();
+        addedIds[addedCount] = road.getId();
+        for (int criterion = 1; criterion <= stride; criterion++) {
+            addedExtraWeights[addedCount * stride + criterion - 1] = road.getWeight(criterion);
+        }
+        int index = baseRoadCount + addedCount++;
+        addToCity(city1, index);
+        if (city2 != city1) addToCity(city2, index);
+        openRoadIndexes.put(road.getId(), index);
+        return index;
+    }
+
+    /**
+     * Closes the open road with an id.
+     * @param id The road id.
+     * @return The index of the closed road, or -1 if there is no open road with the id.
+     */
+    public int closeRoad(int id) {
+        Integer road = openRoadIndexes.remove(id);
+        if (road == null) return -1;
+        closedRoads.set(road);
+        closedCount++;
+        return road;
+    }
+
+    private int addCity(String name) {
+        int city = cityId(name);
+        if (city >= 0) return city;
+        city = cityCount();
+        addedCityIds.put(name, city);
+        addedCityNames.add(name);
+        if (city == addedDegrees.length) {
+            int capacity = Math.max(16, city * 2);
+            addedAdjacency = Arrays.copyOf(addedAdjacency, capacity);
+            addedDegrees = Arrays.copyOf(addedDegrees, capacity);
+        }
+        return city;
+    }
+
+    private void addToCity(int city, int road) {
+        int[] roads = addedAdjacency[city];
+        if (roads == null) {
+            roads = addedAdjacency[city] = new int[4];
+        } else if (addedDegrees[city] == roads.length) {
+            roads = addedAdjacency[city] = Arrays.copyOf(roads, roads.length * 2);
+        }
+        roads[addedDegrees[city]++] = road;
+    }
+}
@@ -1,4 +1,5 @@
 import java.io.*;
+import java.nio.charset.StandardCharsets;
 import java.util.*;
 
 /**
@@ -7,66 +8,197 @@ import java.util.*;
 public class FileHandler {
 
     /**
-     * Reads the input file and creates a RoadNetwork.
+     * Reads the UTF-8 input file and creates a RoadNetwork.
+     * The first line holds the start and end cities, and every following line is either a road
+     * ("city1 city2 distance id", optionally followed by up to four more costs such as travel time or
+     * toll) or, in the optional coordinate section, a city position ("city x y"). The costs other than
+     * the distance must not be negative, since the route searches rely on that.
+     * A file compiled by GraphFile is loaded directly instead.
      *
      * @param inputFile The input file path.
      * @return A RoadNetwork object.
      */
     public RoadNetwork readInput(String inputFile) {
+        if (GraphFile.isGraphFile(new File(inputFile))) {
+            try {
+                return GraphFile.read(new File(inputFile));
+            } catch (IOException e) {
+                e.printStackTrace();
+                return new RoadNetwork();
+            }
+        }
         RoadNetwork roadNetwork = new RoadNetwork();
-        try (Scanner scanner = new Scanner(new File(inputFile))) {
-            String startCity = scanner.next();
-            String endCity = scanner.next();
-            roadNetwork.setStartCity(startCity);
-            roadNetwork.setEndCity(endCity);
+        try (RoadFileReader reader = new RoadFileReader(new FileInputStream(inputFile))) {
+            if (!reader.nextLine()) return roadNetwork;
+            requireFieldCount(reader, 2, 2, "the start and end cities");
+            roadNetwork.setStartCity(reader.name(0));
+            roadNetwork.setEndCity(reader.name(1));
 
-            while (scanner.hasNext()) {
-                String city1 = scanner.next();
-                String city2 = scanner.next();
-                int distance = scanner.nextInt();
-                int id = scanner.nextInt();
-                roadNetwork.addRoad(city1, city2, distance, id);
+            roadNetwork.startBulkLoad();
+            while (reader.nextLine()) {
+                requireFieldCount(reader, 3, Integer.MAX_VALUE, "a road or the coordinates of a city");
+                if (reader.fieldCount() == 3) {
+                    roadNetwork.setCoordinates(reader.name(0), reader.doubleField(1), reader.doubleField(2));
+                } else {
+                    int[] extraWeights = reader.fieldCount() <= 4 ? Road.NO_EXTRA_WEIGHTS : new int[reader.fieldCount() - 4];
+                    for (int i = 0; i < extraWeights.length; i++) {
+                        extraWeights[i] = reader.intField(4 + i);
+                        if (extraWeights[i] < 0) {
+                            throw new IllegalArgumentException("Line " + reader.lineNumber() + " has a negative cost in field " + (5 + i));
+                        }
+                    }
+                    roadNetwork.addRoad(reader.name(0), reader.name(1), reader.intField(2), reader.intField(3), extraWeights);
+                }
             }
-        } catch (FileNotFoundException e) {
+        } catch (IOException e) {
             e.printStackTrace();
         }
+        roadNetwork.finishBulkLoad();
         return roadNetwork;
     }
 
+    /**
+     * Rejects a line whose number of fields is out of range, instead of reading fields it does not have.
+     *
+     * @throws IllegalArgumentException If the line has too few or too many fields.
+     */
+    private static void requireFieldCount(RoadFileReader reader, int min, int max, String expected) {
+        if (reader.fieldCount() < min || reader.fieldCount() > max) {
+            throw new IllegalArgumentException("Line " + reader.lineNumber() + " has " + reader.fieldCount()
+                    + " fields, expected " + expected);
+        }
+    }
+
     /**
      * Writes the output to the file.
      *
-     * @param outputFile             The output file path.
-     * @param originalNetwork        The original RoadNetwork.
-     * @param fastestRouteNetwork    The fastest route RoadNetwork.
-     * @param barelyConnectedMap     The barely connected RoadNetwork.
+     * @param outputFile The output file path.
+     * @param analysis   The analysis of the road network.
      */
-    public void writeOutput(String outputFile, RoadNetwork originalNetwork, RoadNetwork fastestRouteNetwork, RoadNetwork barelyConnectedMap) {
-        try (PrintWriter writer = new PrintWriter(outputFile)) {
-            writer.println("Fastest Route from " + originalNetwork.getStartCity() + " to " + originalNetwork.getEndCity() +
-                    " (" + fastestRouteNetwork.getRoads().stream().mapToInt(Road::getDistance).sum() + " KM):");
-            fastestRouteNetwork.getRoads().forEach(writer::println);
+    public void writeOutput(String outputFile, MapAnalysis analysis) {
+        try (PrintWriter writer = new PrintWriter(outputFile, StandardCharsets.UTF_8)) {
+            writeOutput(writer, analysis);
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
 
-            writer.println("Roads of Barely Connected Map is:");
-            barelyConnectedMap.getRoads().stream().sorted(Comparator.comparingInt(Road::getDistance)
-                    .thenComparingInt(Road::getId)).forEach(writer::println);
+    /**
+     * Formats an analysis.
+     *
+     * @param writer   The writer to format to.
+     * @param analysis The analysis of the road network.
+     */
+    public void writeOutput(PrintWriter writer, MapAnalysis analysis) {
+        if (analysis.hasFastestRoute()) {
+            writer.println("Fastest Route from " + analysis.getStartCity() + " to " + analysis.getEndCity() +
+                    " (" + routeLength(analysis.getFastestRoute(), analysis.getCriterion()) + "):");
+            analysis.getFastestRoute().getRoads().forEach(writer::println);
+        } else {
+            writer.println("No Route from " + analysis.getStartCity() + " to " + analysis.getEndCity());
+        }
+        for (int i = 0; i < analysis.getAlternativeRoutes().size(); i++) {
+            RoadNetwork alternativeRoute = analysis.getAlternativeRoutes().get(i);
+            writer.println("Alternative Route " + (i + 1) + " from " + analysis.getStartCity() + " to " + analysis.getEndCity() +
+                    " (" + alternativeRoute.getTotalDistance() + " KM):");
+            alternativeRoute.getRoads().forEach(writer::println);
+        }
+        for (int i = 0; i < analysis.getParetoRoutes().size(); i++) {
+            StringJoiner costs = new StringJoiner("/");
+            for (long cost : analysis.getParetoRouteCosts().get(i)) {
+                costs.add(Long.toString(cost));
+            }
+            writer.println("Pareto Route " + (i + 1) + " from " + analysis.getStartCity() + " to " + analysis.getEndCity() +
+                    " (" + analysis.getParetoRoutes().get(i).getTotalDistance() + " KM, costs " + costs + "):");
+            analysis.getParetoRoutes().get(i).getRoads().forEach(writer::println);
+        }
 
-            RoadNetwork mstFastestRouteNetwork = new ShortestPathFinder(barelyConnectedMap).findFastestRoute(originalNetwork.getStartCity(), originalNetwork.getEndCity());
-            writer.println("Fastest Route from " + originalNetwork.getStartCity() + " to " + originalNetwork.getEndCity() +
-                    " on Barely Connected Map (" + mstFastestRouteNetwork.getRoads().stream().mapToInt(Road::getDistance).sum() + " KM):");
-            mstFastestRouteNetwork.getRoads().forEach(writer::println);
+        writer.println("Roads of Barely Connected Map is:");
+        analysis.getBarelyConnectedRoads().forEach(writer::println);
 
-            writer.println("Analysis:");
-            int originalTotalDistance = originalNetwork.getRoads().stream().mapToInt(Road::getDistance).sum();
-            int barelyConnectedTotalDistance = barelyConnectedMap.getRoads().stream().mapToInt(Road::getDistance).sum();
+        if (analysis.hasFastestRoute()) {
+            writer.println("Fastest Route from " + analysis.getStartCity() + " to " + analysis.getEndCity() +
+                    " on Barely Connected Map (" + analysis.getBarelyConnectedFastestRoute().getTotalDistance() + " KM):");
+            analysis.getBarelyConnectedFastestRoute().getRoads().forEach(writer::println);
+        } else {
+            writer.println("No Route from " + analysis.getStartCity() + " to " + analysis.getEndCity() + " on Barely Connected Map");
+        }
 
-            double materialUsageRatio = (double) barelyConnectedTotalDistance / originalTotalDistance;
-            double fastestRouteRatio = (double) mstFastestRouteNetwork.getRoads().stream().mapToInt(Road::getDistance).sum() / fastestRouteNetwork.getRoads().stream().mapToInt(Road::getDistance).sum();
+        writer.println("Analysis:");
+        writer.printf("Ratio of Construction Material Usage Between Barely Connected and Original Map: %.2f", analysis.getMaterialUsageRatio());
+        // Without a route there is no ratio of route lengths to report
+        if (analysis.hasFastestRoute()) {
+            writer.printf("\nRatio of Fastest Route Between Barely Connected and Original Map: %.2f", analysis.getFastestRouteRatio());
+        }
+    }
 
-            writer.printf("Ratio of Construction Material Usage Between Barely Connected and Original Map: %.2f\n", materialUsageRatio);
-            writer.printf("Ratio of Fastest Route Between Barely Connected and Original Map: %.2f", fastestRouteRatio);
+    /**
+     * Reads a query file with one "startCity endCity" pair per line.
+     *
+     * @param queryFile The query file path.
+     * @return The queries as {startCity, endCity} pairs.
+     */
+    public List<String[]> readQueries(String queryFile) {
+        List<String[]> queries = new ArrayList<>();
+        try (RoadFileReader reader = new RoadFileReader(new FileInputStream(queryFile))) {
+            while (reader.nextLine()) {
+                requireFieldCount(reader, 2, 2, "a start and an end city");
+                queries.add(new String[]{reader.name(0), reader.name(1)});
+            }
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+        return queries;
+    }
 
-        } catch (FileNotFoundException e) {
+    /**
+     * Formats the length of a route: its distance, and the cost it was chosen for if that is not the distance.
+     *
+     * @param route     The route.
+     * @param criterion The cost that was minimized, 0 for the distance.
+     * @return The length, such as "12 KM" or "12 KM, cost 40".
+     */
+    private static String routeLength(RoadNetwork route, int criterion) {
+        if (criterion == 0) return route.getTotalDistance() + " KM";
+        long cost = 0;
+        for (Road road : route.getRoads()) {
+            cost += road.getWeight(criterion);
+        }
+        return route.getTotalDistance() + " KM, cost " + cost;
+    }
+
+    /**
+     * Writes the fastest route of every query, in query order.
+     *
+     * @param outputFile The output file path.
+     * @param queries    The queries as {startCity, endCity} pairs.
+     * @param routes     The fastest route of each query.
+     */
+    public void writeRoutes(String outputFile, List<String[]> queries, RoadNetwork[] routes) {
+        writeRoutes(outputFile, queries, routes, 0);
+    }
+
+    /**
+     * Writes the fastest route of every query, in query order.
+     *
+     * @param outputFile The output file path.
+     * @param queries    The queries as {startCity, endCity} pairs.
+     * @param routes     The fastest route of each query.
+     * @param criterion  The cost the routes minimize, 0 for the distance.
+     */
+    public void writeRoutes(String outputFile, List<String[]> queries, RoadNetwork[] routes, int criterion) {
+        try (PrintWriter writer = new PrintWriter(new BufferedWriter(new FileWriter(outputFile, StandardCharsets.UTF_8)))) {
+            for (int i = 0; i < routes.length; i++) {
+                // A route between two different cities has at least one road, so an empty one means there is none
+                if (routes[i].getRoads().isEmpty() && !queries.get(i)[0].equals(queries.get(i)[1])) {
+                    writer.println("No Route from " + queries.get(i)[0] + " to " + queries.get(i)[1]);
+                    continue;
+                }
+                writer.println("Fastest Route from " + queries.get(i)[0] + " to " + queries.get(i)[1] +
+                        " (" + routeLength(routes[i], criterion) + "):");
+                routes[i].getRoads().forEach(writer::println);
+            }
+        } catch (IOException e) {
             e.printStackTrace();
         }
     }
@@ -0,0 +1,169 @@
+import java.util.*;
+
+/**
+ * The connected parts of a graph, found in one linear pass: the component of every city,
+ * the bridges (roads whose closure splits a component) and the articulation cities (cities
+ * whose loss splits a component). Two cities in different components have no route between
+ * them, which can be told without a search.
+ */
+public class GraphComponents {
+    private final int[] components;
+    private final int[] firstCities;
+    private final int[] sizes;
+    private final BitSet bridges;
+    private final BitSet articulationCities;
+
+    private GraphComponents(int[] components, int[] firstCities, BitSet bridges, BitSet articulationCities) {
+        this.components = components;
+        this.firstCities = firstCities;
+        this.sizes = new int[firstCities.length];
+        for (int component : components) {
+            sizes[component]++;
+        }
+        this.bridges = bridges;
+        this.articulationCities = articulationCities;
+    }
+
+    /**
+     * Finds the components, bridges and articulation cities of a graph with an iterative
+     * depth-first search (Tarjan's low-link method), so long chains do not overflow the stack.
+     * Components are numbered in the order of their smallest city id.
+     *
+     * @param graph The compact graph.
+     * @return The components.
+     */
+    public static GraphComponents compute(RoadGraph graph) {
+        int cityCount = graph.cityCount();
+        int[] components = new int[cityCount];
+        int[] discovery = new int[cityCount]; // 0 while not visited
+        int[] low = new int[cityCount];
+        int[] parentRoads = new int[cityCount];
+        int[] nextEdges = new int[cityCount];
+        int[] stack = new int[cityCount];
+        BitSet bridges = new BitSet(graph.roadCount());
+        BitSet articulationCities = new BitSet(cityCount);
+        List<Integer> firstCities = new ArrayList<>();
+        int time = 0;
+
+        for (int root = 0; root < cityCount; root++) {
+            if (discovery[root] != 0) continue;
+            int component = firstCities.size();
+            firstCities.add(root);
+            int rootChildren = 0;
+            int top = 0;
+            stack[top++] = root;
+            discovery[root] = low[root] = ++time;
+            parentRoads[root] = -1;
+            nextEdges[root] = graph.firstEdge(root);
+            components[root] = component;
+
+            while (top > 0) {
+                int city = stack[top - 1];
+                if (nextEdges[city] < graph.endEdge(city)) {
+                    int edge = nextEdges[city]++;
+                    int road = graph.road(edge);
+                    if (road == parentRoads[city]) continue; // Parallel roads to the parent are still followed
+                    int neighbor = graph.target(edge);
+                    if (discovery[neighbor] == 0) {
+                        discovery[neighbor] = low[neighbor] = ++time;
+                        parentRoads[neighbor] = road;
+                        nextEdges[neighbor] = graph.firstEdge(neighbor);
+                        components[neighbor] = component;
+                        stack[top++] = neighbor;
+                        if (city == root) rootChildren++;
+                    } else {
+                        low[city] = Math.min(low[city], discovery[neighbor]);
+                    }
+                } else {
+                    top--;
+                    if (city == root) continue;
+                    int parent = graph.otherCity(parentRoads[city], city);
+                    low[parent] = Math.min(low[parent], low[city]);
+                    if (low[city] > discovery[parent]) bridges.set(parentRoads[city]);
+                    if (parent != root && low[city] >= discovery[parent]) articulationCities.set(parent);
+                }
+            }
+            if (rootChildren > 1) articulationCities.set(root);
+        }
+        return new GraphComponents(components, firstCities.stream().mapToInt(Integer::intValue).toArray(), bridges, articulationCities);
+    }
+
+    /**
+     * Gets the number of components.
+     * @return The number of components.
+     */
+    public int componentCount() {
+        return firstCities.length;
+    }
+
+    /**
+     * Gets the component of a city.
+     * @param city The id of the city.
+     * @return The component number.
+     */
+    public int component(int city) {
+        return components[city];
+    }
+
+    /**
+     * Gets the smallest city id of a component.
+     * @param component The component number.
+     * @return The id of the city.
+     */
+    public int firstCity(int component) {
+        return firstCities[component];
+    }
+
+    /**
+     * Gets the number of cities in a component.
+     * @param component The component number.
+     * @return The number of cities.
+     */
+    public int size(int component) {
+        return sizes[component];
+    }
+
+    /**
+     * Checks if there is a route between two cities.
+     * @param city1 The id of the first city.
+     * @param city2 The id of the second city.
+     * @return true if the cities are in the same component, false otherwise.
+     */
+    public boolean connected(int city1, int city2) {
+        return components[city1] == components[city2];
+    }
+
+    /**
+     * Checks if a road is a bridge.
+     * @param road The road index.
+     * @return true if closing the road would split its component, false otherwise.
+     */
+    public boolean isBridge(int road) {
+        return bridges.get(road);
+    }
+
+    /**
+     * Gets the number of bridges.
+     * @return The number of bridges.
+     */
+    public int bridgeCount() {
+        return bridges.cardinality();
+    }
+
+    /**
+     * Checks if a city is an articulation city.
+     * @param city The id of the city.
+     * @return true if losing the city would split its component, false otherwise.
+     */
+    public boolean isArticulationCity(int city) {
+        return articulationCities.get(city);
+    }
+
+    /**
+     * Gets the number of articulation cities.
+     * @return The number of articulation cities.
+     */
+    public int articulationCityCount() {
+        return articulationCities.cardinality();
+    }
+}
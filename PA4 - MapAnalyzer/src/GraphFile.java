@@ -0,0 +1,187 @@
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Compiled binary form of a road network: the start and end cities, the compact graph
+ * (city name table, roads, CSR adjacency and road order) and the optional coordinates.
+ * Reading memory-maps the file and copies the arrays in bulk, so no text is parsed and no
+ * City or Road objects are created until the output needs them.
+ */
+public class GraphFile {
+    private static final int MAGIC = 0x52474632; // "RGF2"
+    private static final int CHUNK_INTS = 1 << 20;
+
+    /**
+     * Checks if a file starts like a compiled graph file.
+     *
+     * @param file The file.
+     * @return true if the file is a compiled graph file, false otherwise.
+     */
+    public static boolean isGraphFile(File file) {
+        try (DataInputStream in = new DataInputStream(new FileInputStream(file))) {
+            return in.readInt() == MAGIC;
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Writes the compiled form of a road network.
+     *
+     * @param roadNetwork The road network.
+     * @param file        The output file.
+     * @throws IOException If the file cannot be written.
+     */
+    public static void write(RoadNetwork roadNetwork, File file) throws IOException {
+        RoadGraph graph = roadNetwork.getGraph();
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            ByteBuffer magic = ByteBuffer.allocate(4).putInt(0, MAGIC);
+            while (magic.hasRemaining()) channel.write(magic);
+            writeStrings(channel, new String[]{nullToEmpty(roadNetwork.getStartCity()), nullToEmpty(roadNetwork.getEndCity())});
+            graph.write(channel);
+
+            boolean hasCoordinates = false;
+            double[] coordinates = new double[2 * graph.cityCount()];
+            for (int city = 0; city < graph.cityCount(); city++) {
+                double[] position = roadNetwork.getCoordinates(graph.cityName(city));
+                hasCoordinates |= position != null;
+                coordinates[2 * city] = position == null ? Double.NaN : position[0];
+                coordinates[2 * city + 1] = position == null ? Double.NaN : position[1];
+            }
+            writeInts(channel, new int[]{hasCoordinates ? 1 : 0});
+            if (hasCoordinates) {
+                long[] bits = new long[coordinates.length];
+                for (int i = 0; i < bits.length; i++) {
+                    bits[i] = Double.doubleToRawLongBits(coordinates[i]);
+                }
+                writeInts(channel, splitLongs(bits));
+            }
+        }
+    }
+
+    /**
+     * Reads a compiled road network.
+     *
+     * @param file The compiled graph file.
+     * @return The road network, backed by the loaded graph.
+     * @throws IOException If the file cannot be read or is not a compiled graph file.
+     */
+    public static RoadNetwork read(File file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            if (readInt(channel) != MAGIC) throw new IOException("Not a compiled graph file: " + file);
+            String[] endpoints = readStrings(channel);
+            RoadGraph graph = RoadGraph.read(channel);
+
+            RoadNetwork roadNetwork = new RoadNetwork(graph);
+            roadNetwork.setStartCity(endpoints[0].isEmpty() ? null : endpoints[0]);
+            roadNetwork.setEndCity(endpoints[1].isEmpty() ? null : endpoints[1]);
+            if (readInts(channel)[0] == 1) {
+                int[] halves = readInts(channel);
+                for (int city = 0; city < graph.cityCount(); city++) {
+                    double x = Double.longBitsToDouble(joinLong(halves, 2 * city));
+                    double y = Double.longBitsToDouble(joinLong(halves, 2 * city + 1));
+                    if (!Double.isNaN(x)) roadNetwork.setCoordinates(graph.cityName(city), x, y);
+                }
+            }
+            return roadNetwork;
+        }
+    }
+
+    /**
+     * Writes a length-prefixed int array at the current position of a channel.
+     */
+    static void writeInts(FileChannel channel, int[] values) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocateDirect(4 * Math.min(CHUNK_INTS, values.length + 1));
+        buffer.putInt(values.length);
+        int position = 0;
+        while (true) {
+            int count = Math.min(buffer.remaining() / 4, values.length - position);
+            buffer.asIntBuffer().put(values, position, count);
+            buffer.position(buffer.position() + 4 * count);
+            position += count;
+            buffer.flip();
+            while (buffer.hasRemaining()) channel.write(buffer);
+            if (position == values.length) return;
+            buffer.clear();
+        }
+    }
+
+    /**
+     * Reads a length-prefixed int array by memory-mapping it from the current position of a channel.
+     */
+    static int[] readInts(FileChannel channel) throws IOException {
+        int[] values = new int[readInt(channel)];
+        long position = channel.position();
+        // A single mapping is limited to 2 GB, so large arrays are mapped in parts
+        for (int start = 0; start < values.length; start += CHUNK_INTS * 256) {
+            int count = Math.min(CHUNK_INTS * 256, values.length - start);
+            channel.map(FileChannel.MapMode.READ_ONLY, position + 4L * start, 4L * count).asIntBuffer().get(values, start, count);
+        }
+        channel.position(position + 4L * values.length);
+        return values;
+    }
+
+    private static int readInt(FileChannel channel) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(4);
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer) < 0) throw new EOFException();
+        }
+        return buffer.getInt(0);
+    }
+
+    /**
+     * Writes strings as a table of UTF-8 byte offsets followed by the bytes.
+     */
+    static void writeStrings(FileChannel channel, String[] strings) throws IOException {
+        byte[][] encoded = new byte[strings.length][];
+        int[] offsets = new int[strings.length + 1];
+        for (int i = 0; i < strings.length; i++) {
+            encoded[i] = strings[i].getBytes(StandardCharsets.UTF_8);
+            offsets[i + 1] = offsets[i] + encoded[i].length;
+        }
+        writeInts(channel, offsets);
+        ByteBuffer bytes = ByteBuffer.allocate(offsets[strings.length]);
+        for (byte[] string : encoded) {
+            bytes.put(string);
+        }
+        bytes.flip();
+        while (bytes.hasRemaining()) channel.write(bytes);
+    }
+
+    /**
+     * Reads strings written by writeStrings.
+     */
+    static String[] readStrings(FileChannel channel) throws IOException {
+        int[] offsets = readInts(channel);
+        int count = offsets.length - 1;
+        byte[] bytes = new byte[offsets[count]];
+        channel.map(FileChannel.MapMode.READ_ONLY, channel.position(), bytes.length).get(bytes);
+        channel.position(channel.position() + bytes.length);
+        String[] strings = new String[count];
+        for (int i = 0; i < count; i++) {
+            strings[i] = new String(bytes, offsets[i], offsets[i + 1] - offsets[i], StandardCharsets.UTF_8);
+        }
+        return strings;
+    }
+
+    private static int[] splitLongs(long[] values) {
+        int[] halves = new int[2 * values.length];
+        for (int i = 0; i < values.length; i++) {
+            halves[2 * i] = (int) (values[i] >>> 32);
+            halves[2 * i + 1] = (int) values[i];
+        }
+        return halves;
+    }
+
+    private static long joinLong(int[] halves, int index) {
+        return ((long) halves[2 * index] << 32) | (halves[2 * index + 1] & 0xFFFFFFFFL);
+    }
+
+    private static String nullToEmpty(String value) {
+        return value == null ? "" : value;
+    }
+}
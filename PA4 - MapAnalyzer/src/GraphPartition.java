@@ -0,0 +1,178 @@
+import java.util.*;
+
+/**
+ * Splits the cities of a graph into nested cells. Level 1 cells are grown by breadth-first
+ * search over the roads until they hold cellSize cities; every higher level groups up to
+ * fanout neighboring cells of the level below the same way. Level 0 is the cities themselves.
+ * After growing, the cells of a level are refined by moving single units (cities or cells of
+ * the level below) to the neighboring cell they have the most roads to, which cuts fewer
+ * roads and so leaves fewer boundary cities for the overlay cliques.
+ */
+public class GraphPartition {
+    private static final int REFINE_PASSES = 8;
+
+    private final int[][] cityCells; // Cell of every city, per level
+    private final int[] cellCounts;
+
+    private GraphPartition(int[][] cityCells, int[] cellCounts) {
+        this.cityCells = cityCells;
+        this.cellCounts = cellCounts;
+    }
+
+    /**
+     * Partitions a graph.
+     *
+     * @param graph      The compact graph.
+     * @param cellSize   The maximum number of cities of a level 1 cell.
+     * @param levelCount The number of levels above the cities.
+     * @param fanout     The maximum number of cells grouped into one cell of the next level.
+     * @return The partition.
+     */
+    public static GraphPartition build(RoadGraph graph, int cellSize, int levelCount, int fanout) {
+        int cityCount = graph.cityCount();
+        int[][] cityCells = new int[levelCount + 1][];
+        int[] cellCounts = new int[levelCount + 1];
+        cityCells[0] = new int[cityCount];
+        for (int city = 0; city < cityCount; city++) {
+            cityCells[0][city] = city;
+        }
+        cellCounts[0] = cityCount;
+
+        for (int level = 1; level <= levelCount; level++) {
+            int[] units = cityCells[level - 1];
+            int[] groups = group(graph, units, cellCounts[level - 1], level == 1 ? cellSize : fanout);
+            cityCells[level] = new int[cityCount];
+            int groupCount = 0;
+            for (int city = 0; city < cityCount; city++) {
+                cityCells[level][city] = groups[units[city]];
+                groupCount = Math.max(groupCount, groups[units[city]] + 1);
+            }
+            cellCounts[level] = groupCount;
+        }
+        return new GraphPartition(cityCells, cellCounts);
+    }
+
+    /**
+     * Groups the cells of one level by breadth-first search over the roads between them.
+     *
+     * @return The group of every cell.
+     */
+    private static int[] group(RoadGraph graph, int[] cityCells, int cellCount, int groupSize) {
+        // Adjacency of the cells, in CSR form
+        int[] offsets = new int[cellCount + 1];
+        for (int road = 0; road < graph.roadCount(); road++) {
+            int cell1 = cityCells[graph.roadCity1(road)];
+            int cell2 = cityCells[graph.roadCity2(road)];
+            if (cell1 != cell2) {
+                offsets[cell1 + 1]++;
+                offsets[cell2 + 1]++;
+            }
+        }
+        for (int cell = 0; cell < cellCount; cell++) {
+            offsets[cell + 1] += offsets[cell];
+        }
+        int[] neighbors = new int[offsets[cellCount]];
+        int[] next = Arrays.copyOf(offsets, cellCount);
+        for (int road = 0; road < graph.roadCount(); road++) {
+            int cell1 = cityCells[graph.roadCity1(road)];
+            int cell2 = cityCells[graph.roadCity2(road)];
+            if (cell1 != cell2) {
+                neighbors[next[cell1]++] = cell2;
+                neighbors[next[cell2]++] = cell1;
+            }
+        }
+
+        int[] groups = new int[cellCount];
+        Arrays.fill(groups, -1);
+        int[] queue = new int[cellCount];
+        int groupCount = 0;
+        for (int seed = 0; seed < cellCount; seed++) {
+            if (groups[seed] >= 0) continue;
+            int group = groupCount++;
+            int head = 0;
+            int tail = 0;
+            int size = 1;
+            groups[seed] = group;
+            queue[tail++] = seed;
+            while (head < tail && size < groupSize) {
+                int cell = queue[head++];
+                for (int i = offsets[cell]; i < offsets[cell + 1] && size < groupSize; i++) {
+                    if (groups[neighbors[i]] < 0) {
+                        groups[neighbors[i]] = group;
+                        queue[tail++] = neighbors[i];
+                        size++;
+                    }
+                }
+            }
+        }
+        refine(offsets, neighbors, groups, groupCount, groupSize);
+        return groups;
+    }
+
+    /**
+     * Moves units to the neighboring group they have the most roads to, as long as that group
+     * has room and the move cuts fewer roads than it adds, until no unit moves. No group is
+     * left empty, so the group numbers stay dense.
+     */
+    private static void refine(int[] offsets, int[] neighbors, int[] groups, int groupCount, int groupSize) {
+        int[] groupSizes = new int[groupCount];
+        for (int group : groups) {
+            groupSizes[group]++;
+        }
+        int[] roadCounts = new int[groupCount];
+        int[] touchedGroups = new int[groupCount];
+        for (int pass = 0; pass < REFINE_PASSES; pass++) {
+            int movedCount = 0;
+            for (int unit = 0; unit < groups.length; unit++) {
+                int touchedCount = 0;
+                for (int i = offsets[unit]; i < offsets[unit + 1]; i++) {
+                    int group = groups[neighbors[i]];
+                    if (roadCounts[group]++ == 0) touchedGroups[touchedCount++] = group;
+                }
+                int ownGroup = groups[unit];
+                int bestGroup = ownGroup;
+                for (int i = 0; i < touchedCount; i++) {
+                    int group = touchedGroups[i];
+                    if (groupSizes[group] < groupSize && roadCounts[group] > roadCounts[bestGroup]) bestGroup = group;
+                }
+                for (int i = 0; i < touchedCount; i++) {
+                    roadCounts[touchedGroups[i]] = 0;
+                }
+                if (bestGroup != ownGroup && groupSizes[ownGroup] > 1) {
+                    groups[unit] = bestGroup;
+                    groupSizes[ownGroup]--;
+                    groupSizes[bestGroup]++;
+                    movedCount++;
+                }
+            }
+            if (movedCount == 0) break;
+        }
+    }
+
+    /**
+     * Gets the number of levels above the cities.
+     * @return The number of levels.
+     */
+    public int levelCount() {
+        return cityCells.length - 1;
+    }
+
+    /**
+     * Gets the number of cells of a level.
+     * @param level The level, 0 for the cities.
+     * @return The number of cells.
+     */
+    public int cellCount(int level) {
+        return cellCounts[level];
+    }
+
+    /**
+     * Gets the cell of a city.
+     * @param level The level, 0 for the cities.
+     * @param city  The id of the city.
+     * @return The cell number.
+     */
+    public int cell(int level, int city) {
+        return cityCells[level][city];
+    }
+}
@@ -0,0 +1,162 @@
+import java.util.Arrays;
+
+/**
+ * Binary min-heap over int city ids with decrease-key.
+ * Each city is in the heap at most once, so the heap never grows past the number of cities.
+ * Keys are ordered by distance and then by road id.
+ */
+public class IndexedMinHeap {
+    private final int[] heap;
+    private final int[] positions;
+    private final long[] keys;
+    private int size;
+
+    /**
+     * Creates an empty heap for the given number of cities.
+     *
+     * @param capacity The number of cities.
+     */
+    public IndexedMinHeap(int capacity) {
+        heap = new int[capacity];
+        positions = new int[capacity];
+        keys = new long[capacity];
+        Arrays.fill(positions, -1);
+    }
+
+    /**
+     * Packs a distance and a road id into one comparable key.
+     *
+     * @param distance The distance.
+     * @param roadId   The road id, compared when distances are equal.
+     * @return The key.
+     */
+    public static long key(int distance, int roadId) {
+        return ((long) distance << 32) | ((roadId ^ Integer.MIN_VALUE) & 0xFFFFFFFFL);
+    }
+
+    /**
+     * Gets the distance part of a key.
+     *
+     * @param key The key.
+     * @return The distance.
+     */
+    public static int distance(long key) {
+        return (int) (key >> 32);
+    }
+
+    /**
+     * Checks if the heap is empty.
+     *
+     * @return true if the heap is empty, false otherwise.
+     */
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    /**
+     * Gets the number of cities in the heap.
+     *
+     * @return The size.
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Checks if a city is in the heap.
+     *
+     * @param city The city id.
+     * @return true if the city is in the heap, false otherwise.
+     */
+    public boolean contains(int city) {
+        return positions[city] >= 0;
+    }
+
+    /**
+     * Gets the key of the city at the top of the heap.
+     *
+     * @return The smallest key.
+     */
+    public long peekKey() {
+        return keys[heap[0]];
+    }
+
+    /**
+     * Removes all cities, in time proportional to the current size.
+     */
+    public void clear() {
+        for (int i = 0; i < size; i++) {
+            positions[heap[i]] = -1;
+        }
+        size = 0;
+    }
+
+    /**
+     * Inserts a city, or lowers its key if it is already in the heap.
+     * A key that is not lower than the current one is ignored.
+     *
+     * @param city The city id.
+     * @param key  The new key.
+     */
+    public void push(int city, long key) {
+        int position = positions[city];
+        if (position < 0) {
+            position = size++;
+            heap[position] = city;
+            positions[city] = position;
+        } else if (key >= keys[city]) {
+            return;
+        }
+        keys[city] = key;
+        siftUp(position);
+    }
+
+    /**
+     * Removes the city with the smallest key.
+     *
+     * @return The city id.
+     */
+    public int poll() {
+        int top = heap[0];
+        positions[top] = -1;
+        size--;
+        if (size > 0) {
+            heap[0] = heap[size];
+            positions[heap[0]] = 0;
+            siftDown(0);
+        }
+        return top;
+    }
+
+    private void siftUp(int position) {
+        int city = heap[position];
+        long key = keys[city];
+        while (position > 0) {
+            int parent = (position - 1) >>> 1;
+            int parentCity = heap[parent];
+            if (keys[parentCity] <= key) break;
+            heap[position] = parentCity;
+            positions[parentCity] = position;
+            position = parent;
+        }
+        heap[position] = city;
+        positions[city] = position;
+    }
+
+    private void siftDown(int position) {
+        int city = heap[position];
+        long key = keys[city];
+        int half = size >>> 1;
+        while (position < half) {
+            int child = 2 * position + 1;
+            if (child + 1 < size && keys[heap[child + 1]] < keys[heap[child]]) child++;
+            int childCity = heap[child];
+            if (key <= keys[childCity]) break;
+            heap[position] = childCity;
+            positions[childCity] = position;
+            position = child;
+        }
+        heap[position] = city;
+        positions[city] = position;
+    }
+}
@@ -0,0 +1,224 @@
+import java.util.*;
+
+/**
+ * Finds the k fastest routes without repeated cities between two cities, with Yen's algorithm.
+ * Every new route leaves an earlier one at a "spur" city: it follows the earlier route up to
+ * there and then takes the fastest way to the end city that avoids the roads already used from
+ * that point and the cities before it.
+ * <p>
+ * Spur searches start only at or after the city where their route itself left its parent
+ * route, since the earlier spur cities were already searched for the parent. They are A*
+ * searches guided by the exact distances to the end city on the whole map, which stay lower
+ * bounds when roads and cities are avoided; a spur whose bound cannot beat the routes already
+ * waiting to be chosen is not searched at all.
+ */
+public class KShortestPathFinder {
+    private final RoadNetwork roadNetwork;
+
+    public KShortestPathFinder(RoadNetwork roadNetwork) {
+        this.roadNetwork = roadNetwork;
+    }
+
+    /**
+     * Finds the fastest routes between two cities, fastest first. The first one is the route
+     * of ShortestPathFinder.
+     *
+     * @param startCity The starting city.
+     * @param endCity   The ending city.
+     * @param count     The maximum number of routes.
+     * @return Up to count routes, fewer if there are not that many routes without repeated cities.
+     */
+    public List<RoadNetwork> findFastestRoutes(String startCity, String endCity, int count) {
+        RoadGraph graph = roadNetwork.getGraph();
+        List<RoadNetwork> routes = new ArrayList<>();
+        for (int[] path : findRoutes(graph.cityId(startCity), graph.cityId(endCity), count)) {
+            routes.add(graph.toRoadNetwork(path));
+        }
+        return routes;
+    }
+
+    /**
+     * Finds the fastest routes between two cities of the graph, fastest first.
+     *
+     * @param start The id of the starting city.
+     * @param end   The id of the ending city.
+     * @param count The maximum number of routes.
+     * @return The road indexes of each route.
+     */
+    public List<int[]> findRoutes(int start, int end, int count) {
+        List<int[]> routes = new ArrayList<>();
+        if (start < 0 || end < 0 || count <= 0) return routes;
+        RoadGraph graph = roadNetwork.getGraph();
+        int[] firstRoute = new ShortestPathFinder(roadNetwork).findRoute(start, end);
+        if (firstRoute.length == 0 && start != end) return routes;
+
+        SpurSearch spurSearch = new SpurSearch(graph, end);
+        List<Candidate> accepted = new ArrayList<>();
+        List<Candidate> candidates = new ArrayList<>(); // Sorted by length, never more than still needed
+        Set<String> knownRoutes = new HashSet<>();
+        Candidate current = new Candidate(firstRoute, length(graph, firstRoute), 0);
+        knownRoutes.add(Arrays.toString(firstRoute));
+
+        while (true) {
+            accepted.add(current);
+            routes.add(current.roads);
+            int needed = count - accepted.size();
+            if (needed == 0) break;
+
+            int[] cities = cities(graph, start, current.roads);
+            long rootLength = length(graph, Arrays.copyOf(current.roads, current.deviation));
+            for (int spur = current.deviation; spur < current.roads.length; spur++) {
+                if (spur > current.deviation) rootLength += graph.roadDistance(current.roads[spur - 1]);
+                long limit = candidates.size() < needed ? Long.MAX_VALUE : candidates.get(needed - 1).length;
+                int[] spurPath = spurSearch.search(cities, spur, current.roads, accepted, limit - rootLength);
+                if (spurPath == null) continue;
+
+                int[] roads = Arrays.copyOf(current.roads, spur + spurPath.length);
+                System.arraycopy(spurPath, 0, roads, spur, spurPath.length);
+                if (knownRoutes.add(Arrays.toString(roads))) {
+                    insert(candidates, new Candidate(roads, length(graph, roads), spur), needed, knownRoutes);
+                }
+            }
+            if (candidates.isEmpty()) break;
+            current = candidates.remove(0);
+        }
+        return routes;
+    }
+
+    /**
+     * Adds a candidate after the ones that are not longer, dropping the ones that can no longer be chosen.
+     */
+    private static void insert(List<Candidate> candidates, Candidate candidate, int needed, Set<String> knownRoutes) {
+        int position = candidates.size();
+        while (position > 0 && candidates.get(position - 1).length > candidate.length) position--;
+        candidates.add(position, candidate);
+        while (candidates.size() > needed) {
+            knownRoutes.remove(Arrays.toString(candidates.remove(candidates.size() - 1).roads));
+        }
+    }
+
+    private static long length(RoadGraph graph, int[] roads) {
+        long length = 0;
+        for (int road : roads) {
+            length += graph.roadDistance(road);
+        }
+        return length;
+    }
+
+    private static int[] cities(RoadGraph graph, int start, int[] roads) {
+        int[] cities = new int[roads.length + 1];
+        cities[0] = start;
+        for (int i = 0; i < roads.length; i++) {
+            cities[i + 1] = graph.otherCity(roads[i], cities[i]);
+        }
+        return cities;
+    }
+
+    /**
+     * A route waiting to be chosen, with the index of the city where it left its parent route.
+     */
+    private static class Candidate {
+        private final int[] roads;
+        private final long length;
+        private final int deviation;
+
+        private Candidate(int[] roads, long length, int deviation) {
+            this.roads = roads;
+            this.length = length;
+            this.deviation = deviation;
+        }
+    }
+
+    /**
+     * A* search from a spur city to the end city with some roads and cities avoided.
+     * Its arrays are reused by every spur search, with stamps instead of clearing.
+     */
+    private static class SpurSearch {
+        private final RoadGraph graph;
+        private final int end;
+        private final int[] bounds; // Distance from each city to the end city on the whole map
+        private final IndexedMinHeap priorityQueue;
+        private final int[] distances;
+        private final int[] previousRoads;
+        private final int[] reachedStamps;
+        private final int[] closedStamps;
+        private final int[] avoidedCityStamps;
+        private final int[] avoidedRoadStamps;
+        private int stamp;
+
+        private SpurSearch(RoadGraph graph, int end) {
+            this.graph = graph;
+            this.end = end;
+            this.bounds = ShortestPathFinder.distancesFrom(graph, end);
+            int cityCount = graph.cityCount();
+            this.priorityQueue = new IndexedMinHeap(cityCount);
+            this.distances = new int[cityCount];
+            this.previousRoads = new int[cityCount];
+            this.reachedStamps = new int[cityCount];
+            this.closedStamps = new int[cityCount];
+            this.avoidedCityStamps = new int[cityCount];
+            this.avoidedRoadStamps = new int[graph.roadCount()];
+        }
+
+        /**
+         * Finds the fastest way from cities[spur] to the end city that avoids the cities before the
+         * spur and the next road of every accepted route that shares the same roads up to the spur.
+         *
+         * @return The road indexes, or null if there is no such way shorter than the limit.
+         */
+        private int[] search(int[] cities, int spur, int[] roads, List<Candidate> accepted, long limit) {
+            int source = cities[spur];
+            if (bounds[source] == Integer.MAX_VALUE || bounds[source] >= limit) return null;
+            stamp++;
+            for (int i = 0; i < spur; i++) {
+                avoidedCityStamps[cities[i]] = stamp;
+            }
+            for (Candidate route : accepted) {
+                if (route.roads.length > spur && Arrays.equals(route.roads, 0, spur, roads, 0, spur)) {
+                    avoidedRoadStamps[route.roads[spur]] = stamp;
+                }
+            }
+
+            priorityQueue.clear();
+            distances[source] = 0;
+            previousRoads[source] = -1;
+            reachedStamps[source] = stamp;
+            priorityQueue.push(source, IndexedMinHeap.key(bounds[source], -1));
+            while (!priorityQueue.isEmpty()) {
+                if (IndexedMinHeap.distance(priorityQueue.peekKey()) >= limit) return null;
+                int currentCity = priorityQueue.poll();
+                closedStamps[currentCity] = stamp;
+                if (currentCity == end) return path(source);
+
+                for (int edge = graph.firstEdge(currentCity); edge < graph.endEdge(currentCity); edge++) {
+                    int neighborCity = graph.target(edge);
+                    if (closedStamps[neighborCity] == stamp || avoidedCityStamps[neighborCity] == stamp
+                            || avoidedRoadStamps[graph.road(edge)] == stamp || bounds[neighborCity] == Integer.MAX_VALUE) {
+                        continue;
+                    }
+                    int newDistance = distances[currentCity] + graph.weight(edge);
+                    if (reachedStamps[neighborCity] != stamp || newDistance < distances[neighborCity]) {
+                        reachedStamps[neighborCity] = stamp;
+                        distances[neighborCity] = newDistance;
+                        previousRoads[neighborCity] = graph.road(edge);
+                        priorityQueue.push(neighborCity, IndexedMinHeap.key(newDistance + bounds[neighborCity], graph.roadId(edge)));
+                    }
+                }
+            }
+            return null;
+        }
+
+        private int[] path(int source) {
+            int length = 0;
+            for (int city = end; city != source; length++) {
+                city = graph.otherCity(previousRoads[city], city);
+            }
+            int[] path = new int[length];
+            for (int city = end; city != source; ) {
+                path[--length] = previousRoads[city];
+                city = graph.otherCity(previousRoads[city], city);
+            }
+            return path;
+        }
+    }
+}
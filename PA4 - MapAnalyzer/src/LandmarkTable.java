@@ -0,0 +1,160 @@
+import java.io.*;
+import java.util.*;
+
+/**
+ * Distance tables from a few landmark cities, used by AStarPathFinder as the ALT lower bound
+ * (A*, landmarks, triangle inequality). For every landmark L, |d(L, target) - d(L, city)| is a
+ * lower bound of d(city, target), so the largest one over all landmarks guides the search.
+ * The tables can be saved to a binary file next to the input and loaded back for later runs.
+ */
+public class LandmarkTable {
+    private static final int MAGIC = 0x414C5431; // "ALT1"
+    private static final int UNREACHABLE = Integer.MAX_VALUE;
+
+    private final int[] landmarks;
+    private final int[][] distances;
+
+    private LandmarkTable(int[] landmarks, int[][] distances) {
+        this.landmarks = landmarks;
+        this.distances = distances;
+    }
+
+    /**
+     * Picks landmarks by farthest-point selection and computes their distance tables.
+     * Each new landmark is the city farthest from the ones already picked, so unreachable
+     * parts of the map get their own landmark.
+     *
+     * @param graph The compact graph.
+     * @param count The number of landmarks.
+     * @return The landmark table.
+     */
+    public static LandmarkTable compute(RoadGraph graph, int count) {
+        count = Math.min(count, graph.cityCount());
+        int[] landmarks = new int[count];
+        int[][] distances = new int[count][];
+        int[] closest = new int[graph.cityCount()];
+        Arrays.fill(closest, UNREACHABLE);
+
+        // The first landmark is the city farthest from city 0
+        int next = count == 0 ? 0 : farthest(ShortestPathFinder.distancesFrom(graph, 0));
+        for (int i = 0; i < count; i++) {
+            landmarks[i] = next;
+            distances[i] = ShortestPathFinder.distancesFrom(graph, next);
+            for (int city = 0; city < closest.length; city++) {
+                closest[city] = Math.min(closest[city], distances[i][city]);
+            }
+            next = farthest(closest);
+        }
+        return new LandmarkTable(landmarks, distances);
+    }
+
+    private static int farthest(int[] distances) {
+        int best = 0;
+        for (int city = 1; city < distances.length; city++) {
+            if (distances[city] > distances[best]) best = city;
+        }
+        return best;
+    }
+
+    /**
+     * Loads the table saved for this graph, or computes and saves it if the file is missing,
+     * unreadable or was saved for a different graph or landmark count.
+     *
+     * @param graph The compact graph.
+     * @param file  The table file.
+     * @param count The number of landmarks.
+     * @return The landmark table.
+     */
+    public static LandmarkTable loadOrCompute(RoadGraph graph, File file, int count) {
+        LandmarkTable table = load(graph, file);
+        if (table != null && table.landmarks.length == Math.min(count, graph.cityCount())) {
+            return table;
+        }
+        table = compute(graph, count);
+        try {
+            table.save(graph, file);
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+        return table;
+    }
+
+    /**
+     * Loads a table saved for this graph.
+     *
+     * @param graph The compact graph.
+     * @param file  The table file.
+     * @return The landmark table, or null if the file is missing or does not match the graph.
+     */
+    public static LandmarkTable load(RoadGraph graph, File file) {
+        if (!file.isFile()) return null;
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+            if (in.readInt() != MAGIC || in.readInt() != graph.cityCount() || in.readInt() != graph.roadCount()
+                    || in.readLong() != graph.fingerprint()) {
+                return null;
+            }
+            int count = in.readInt();
+            int[] landmarks = new int[count];
+            int[][] distances = new int[count][graph.cityCount()];
+            for (int i = 0; i < count; i++) {
+                landmarks[i] = in.readInt();
+                for (int city = 0; city < graph.cityCount(); city++) {
+                    distances[i][city] = in.readInt();
+                }
+            }
+            return new LandmarkTable(landmarks, distances);
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Saves the table for this graph.
+     *
+     * @param graph The compact graph the table was computed for.
+     * @param file  The table file.
+     * @throws IOException If the file cannot be written.
+     */
+    public void save(RoadGraph graph, File file) throws IOException {
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file)))) {
+            out.writeInt(MAGIC);
+            out.writeInt(graph.cityCount());
+            out.writeInt(graph.roadCount());
+            out.writeLong(graph.fingerprint());
+            out.writeInt(landmarks.length);
+            for (int i = 0; i < landmarks.length; i++) {
+                out.writeInt(landmarks[i]);
+                for (int distance : distances[i]) {
+                    out.writeInt(distance);
+                }
+            }
+        }
+    }
+
+    /**
+     * Gets the number of landmarks.
+     *
+     * @return The number of landmarks.
+     */
+    public int size() {
+        return landmarks.length;
+    }
+
+    /**
+     * Gets a lower bound of the route length between two cities.
+     *
+     * @param city   The id of the city.
+     * @param target The id of the target city.
+     * @return The lower bound.
+     */
+    public int lowerBound(int city, int target) {
+        int bound = 0;
+        for (int[] table : distances) {
+            int fromCity = table[city];
+            int fromTarget = table[target];
+            if (fromCity == UNREACHABLE || fromTarget == UNREACHABLE) continue;
+            bound = Math.max(bound, Math.abs(fromTarget - fromCity));
+        }
+        return bound;
+    }
+}
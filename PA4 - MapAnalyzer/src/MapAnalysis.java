@@ -0,0 +1,159 @@
+import java.util.*;
+
+/**
+ * The results of analysing a road network: the fastest route, the barely connected map,
+ * the fastest route on that map and the ratios between them. Everything is computed once
+ * when the analysis is created, so it can be formatted or reported without more work.
+ */
+public class MapAnalysis {
+    private final String startCity;
+    private final String endCity;
+    private final RoadNetwork fastestRoute;
+    private final List<RoadNetwork> alternativeRoutes;
+    private final List<RoadNetwork> paretoRoutes;
+    private final List<long[]> paretoRouteCosts;
+    private final List<Road> barelyConnectedRoads;
+    private final RoadNetwork barelyConnectedFastestRoute;
+    private final double materialUsageRatio;
+    private final double fastestRouteRatio;
+    private final boolean routeFound;
+    private final int criterion;
+
+    /**
+     * Analyses a road network.
+     *
+     * @param originalNetwork    The original RoadNetwork.
+     * @param fastestRoute       The route with the lowest cost on the original network.
+     * @param alternativeRoutes  The next fastest routes on the original network, fastest first; may be empty.
+     * @param paretoRoutes       The Pareto-optimal routes over all the costs of the roads; may be empty.
+     * @param barelyConnectedMap The barely connected map of the original network.
+     * @param criterion          The cost the fastest route minimizes, 0 for the distance.
+     */
+    public MapAnalysis(RoadNetwork originalNetwork, RoadNetwork fastestRoute, List<RoadNetwork> alternativeRoutes,
+                       List<RoadNetwork> paretoRoutes, RoadNetwork barelyConnectedMap, int criterion) {
+        this.criterion = criterion;
+        this.startCity = originalNetwork.getStartCity();
+        this.endCity = originalNetwork.getEndCity();
+        this.fastestRoute = fastestRoute;
+        this.alternativeRoutes = alternativeRoutes;
+        this.paretoRoutes = paretoRoutes;
+        this.paretoRouteCosts = new ArrayList<>();
+        int criterionCount = paretoRoutes.isEmpty() ? 0 : originalNetwork.getGraph().criterionCount();
+        for (RoadNetwork route : paretoRoutes) {
+            long[] costs = new long[criterionCount];
+            for (Road road : route.getRoads()) {
+                for (int i = 0; i < criterionCount; i++) {
+                    costs[i] += road.getWeight(i);
+                }
+            }
+            paretoRouteCosts.add(costs);
+        }
+        this.barelyConnectedRoads = new ArrayList<>(barelyConnectedMap.getRoads());
+        barelyConnectedRoads.sort(Road.DISTANCE_ORDER);
+        this.barelyConnectedFastestRoute = new ShortestPathFinder(barelyConnectedMap).findFastestRoute(startCity, endCity);
+        this.materialUsageRatio = (double) barelyConnectedMap.getTotalDistance() / originalNetwork.getTotalDistance();
+        RoadGraph graph = originalNetwork.getGraph();
+        int start = graph.cityId(startCity);
+        int end = graph.cityId(endCity);
+        this.routeFound = start >= 0 && end >= 0 && graph.components().connected(start, end);
+        this.fastestRouteRatio = routeFound
+                ? (double) barelyConnectedFastestRoute.getTotalDistance() / fastestRoute.getTotalDistance() : Double.NaN;
+    }
+
+    /**
+     * Gets the starting city.
+     * @return The starting city.
+     */
+    public String getStartCity() {
+        return startCity;
+    }
+
+    /**
+     * Gets the ending city.
+     * @return The ending city.
+     */
+    public String getEndCity() {
+        return endCity;
+    }
+
+    /**
+     * Gets the cost the fastest route minimizes.
+     * @return 0 for the distance, 1 and up for the other costs.
+     */
+    public int getCriterion() {
+        return criterion;
+    }
+
+    /**
+     * Checks if the end city can be reached from the start city. If not, the fastest routes are
+     * empty and the ratio of their lengths is meaningless.
+     * @return true if there is a route.
+     */
+    public boolean hasFastestRoute() {
+        return routeFound;
+    }
+
+    /**
+     * Gets the fastest route on the original network.
+     * @return The fastest route.
+     */
+    public RoadNetwork getFastestRoute() {
+        return fastestRoute;
+    }
+
+    /**
+     * Gets the alternative routes on the original network.
+     * @return The alternative routes, fastest first; empty if none were asked for.
+     */
+    public List<RoadNetwork> getAlternativeRoutes() {
+        return alternativeRoutes;
+    }
+
+    /**
+     * Gets the Pareto-optimal routes on the original network.
+     * @return The routes in lexicographic order of their costs; empty if none were asked for.
+     */
+    public List<RoadNetwork> getParetoRoutes() {
+        return paretoRoutes;
+    }
+
+    /**
+     * Gets the total costs of the Pareto-optimal routes.
+     * @return The costs of each route, distance first.
+     */
+    public List<long[]> getParetoRouteCosts() {
+        return paretoRouteCosts;
+    }
+
+    /**
+     * Gets the roads of the barely connected map, sorted by distance and then by id.
+     * @return The roads.
+     */
+    public List<Road> getBarelyConnectedRoads() {
+        return barelyConnectedRoads;
+    }
+
+    /**
+     * Gets the fastest route on the barely connected map.
+     * @return The fastest route.
+     */
+    public RoadNetwork getBarelyConnectedFastestRoute() {
+        return barelyConnectedFastestRoute;
+    }
+
+    /**
+     * Gets the total distance of the barely connected map divided by the one of the original network.
+     * @return The ratio.
+     */
+    public double getMaterialUsageRatio() {
+        return materialUsageRatio;
+    }
+
+    /**
+     * Gets the length of the fastest route on the barely connected map divided by the one on the original network.
+     * @return The ratio, or NaN if there is no route.
+     */
+    public double getFastestRouteRatio() {
+        return fastestRouteRatio;
+    }
+}
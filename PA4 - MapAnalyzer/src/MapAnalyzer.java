@@ -1,32 +1,304 @@
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Locale;
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.IntStream;
 
 /**
  * The main class that runs the map analysis.
  */
 public class MapAnalyzer {
+    private static final String USAGE = "Usage: java MapAnalyzer <input file> <output file>"
+            + " [--search=dijkstra|bidirectional|astar|alt|ch|overlay] [--landmarks=<count>]"
+            + " [--queries=<query file>] [--mst=prim|kruskal|boruvka]"
+            + " [--compile=<graph file>] [--matrix=<.csv or binary file>] [--cache=<routes>]"
+            + " [--alternatives=<count>] [--weight=<cost column>] [--pareto]"
+            + " [--components] [--metrics]"
+            + "\n       java MapAnalyzer <input file> --serve=<port or socket path> [--search=<mode>] [--landmarks=<count>]";
+    private static final int DEFAULT_LANDMARKS = 8;
+
     public static void main(String[] args) {
         Locale.setDefault(Locale.US);
 
-        if (args.length != 2) {
-            System.out.println("Usage: java MapAnalyzer <input file> <output file>");
+        if (args.length < 2) {
+            System.out.println(USAGE);
             return;
         }
 
         String inputFile = args[0];
+        if (args[1].startsWith("--serve=")) {
+            runServer(inputFile, args);
+            return;
+        }
         String outputFile = args[1];
+        String searchMode = null;
+        String queryFile = null;
+        String mstMode = "prim";
+        String compileFile = null;
+        String matrixFile = null;
+        int cacheCapacity = 0;
+        int alternativeCount = 0;
+        int criterion = 0;
+        boolean pareto = false;
+        boolean printComponents = false;
+        SearchMetrics metrics = null;
+        int landmarkCount = DEFAULT_LANDMARKS;
+        for (int i = 2; i < args.length; i++) {
+            if (args[i].startsWith("--search=")) {
+                searchMode = args[i].substring("--search=".length());
+            } else if (args[i].startsWith("--queries=")) {
+                queryFile = args[i].substring("--queries=".length());
+            } else if (args[i].matches("--mst=(prim|kruskal|boruvka)")) {
+                mstMode = args[i].substring("--mst=".length());
+            } else if (args[i].startsWith("--compile=")) {
+                compileFile = args[i].substring("--compile=".length());
+            } else if (args[i].startsWith("--matrix=")) {
+                matrixFile = args[i].substring("--matrix=".length());
+            } else if (args[i].startsWith("--cache=")) {
+                cacheCapacity = Integer.parseInt(args[i].substring("--cache=".length()));
+            } else if (args[i].startsWith("--alternatives=")) {
+                alternativeCount = Integer.parseInt(args[i].substring("--alternatives=".length()));
+            } else if (args[i].startsWith("--weight=")) {
+                criterion = Integer.parseInt(args[i].substring("--weight=".length()));
+            } else if (args[i].equals("--pareto")) {
+                pareto = true;
+            } else if (args[i].equals("--components")) {
+                printComponents = true;
+            } else if (args[i].equals("--metrics")) {
+                metrics = new SearchMetrics();
+            } else if (args[i].startsWith("--landmarks=")) {
+                landmarkCount = Integer.parseInt(args[i].substring("--landmarks=".length()));
+            } else {
+                System.out.println(USAGE);
+                return;
+            }
+        }
 
+        long phaseStart = System.nanoTime();
         FileHandler fileHandler = new FileHandler();
         RoadNetwork roadNetwork = fileHandler.readInput(inputFile);
+        roadNetwork.getGraph(); // Built here so that loading counts it, not the first search
+        if (metrics != null) metrics.recordPhase("load", phaseStart);
+        if (compileFile != null) {
+            // The compiled file can be given as the input of later runs and loads without parsing
+            try {
+                GraphFile.write(roadNetwork, new File(compileFile));
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        }
+        if (printComponents) {
+            GraphComponents components = roadNetwork.getGraph().components();
+            System.out.println("Components: " + components.componentCount() + ", bridges: " + components.bridgeCount()
+                    + ", articulation cities: " + components.articulationCityCount());
+        }
+        phaseStart = System.nanoTime();
+        RouteFinder routeFinder = createRouteFinder(searchMode == null ? "dijkstra" : searchMode, roadNetwork, inputFile, landmarkCount, criterion,
+                metrics == null ? null : metrics.phase("route"));
+        if (routeFinder == null) {
+            System.out.println(USAGE);
+            return;
+        }
+
+        if (cacheCapacity > 0) {
+            routeFinder = new RouteCache(routeFinder, roadNetwork, cacheCapacity);
+        }
+
+        if (queryFile != null) {
+            runBatch(fileHandler, routeFinder, roadNetwork, queryFile, outputFile, criterion);
+            if (metrics != null) {
+                metrics.recordPhase("route", phaseStart);
+                System.out.println(metrics.toJson());
+            }
+            return;
+        }
 
         // Find the fastest route
-        ShortestPathFinder shortestPathFinder = new ShortestPathFinder(roadNetwork);
-        RoadNetwork fastestRouteNetwork = shortestPathFinder.findFastestRoute(roadNetwork.getStartCity(), roadNetwork.getEndCity());
+        RoadNetwork fastestRouteNetwork = routeFinder.findFastestRoute(roadNetwork.getStartCity(), roadNetwork.getEndCity());
+        if (searchMode != null) {
+            System.out.println("Settled cities (" + searchMode + "): " + routeFinder.getSettledCount());
+        }
+        if (metrics != null) metrics.recordPhase("route", phaseStart);
 
         // Find the barely connected map
+        phaseStart = System.nanoTime();
         BarelyConnectedMapBuilder barelyConnectedMapBuilder = new BarelyConnectedMapBuilder(roadNetwork);
-        RoadNetwork barelyConnectedMap = barelyConnectedMapBuilder.buildBarelyConnectedMap();
+        barelyConnectedMapBuilder.setMetrics(metrics == null ? null : metrics.phase("mst"));
+        RoadNetwork barelyConnectedMap;
+        if (mstMode.equals("kruskal")) {
+            barelyConnectedMap = barelyConnectedMapBuilder.buildBarelyConnectedMapKruskal();
+        } else if (mstMode.equals("boruvka")) {
+            barelyConnectedMap = barelyConnectedMapBuilder.buildBarelyConnectedMapBoruvka();
+        } else {
+            barelyConnectedMap = barelyConnectedMapBuilder.buildBarelyConnectedMap();
+        }
+        if (metrics != null) metrics.recordPhase("mst", phaseStart);
+
+        if (matrixFile != null) {
+            try {
+                new DistanceMatrixWriter(roadNetwork, barelyConnectedMap).write(new File(matrixFile));
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        }
+
+        // Find the next fastest routes. When several routes are equally fast, the search engine
+        // may have printed another one than the first one found here, so the printed route is
+        // left out by its roads
+        List<RoadNetwork> alternativeRoutes = new ArrayList<>();
+        if (alternativeCount > 0) {
+            boolean printedRouteFound = false;
+            for (RoadNetwork route : new KShortestPathFinder(roadNetwork).findFastestRoutes(roadNetwork.getStartCity(), roadNetwork.getEndCity(), alternativeCount + 1)) {
+                if (!printedRouteFound && sameRoads(route, fastestRouteNetwork)) {
+                    printedRouteFound = true;
+                } else {
+                    alternativeRoutes.add(route);
+                }
+            }
+            alternativeRoutes = alternativeRoutes.subList(0, Math.min(alternativeCount, alternativeRoutes.size()));
+        }
+
+        List<RoadNetwork> paretoRoutes = pareto
+                ? new ParetoRouteFinder(roadNetwork).findParetoRoutes(roadNetwork.getStartCity(), roadNetwork.getEndCity())
+                : List.of();
 
         // Write the output to the file
-        fileHandler.writeOutput(outputFile, roadNetwork, fastestRouteNetwork, barelyConnectedMap);
+        phaseStart = System.nanoTime();
+        fileHandler.writeOutput(outputFile, new MapAnalysis(roadNetwork, fastestRouteNetwork, alternativeRoutes, paretoRoutes, barelyConnectedMap, criterion));
+        if (metrics != null) {
+            metrics.recordPhase("output", phaseStart);
+            System.out.println(metrics.toJson());
+        }
+    }
+
+    /**
+     * Checks if two routes use the same roads in the same order.
+     *
+     * @param route1 The first route.
+     * @param route2 The second route.
+     * @return true if the routes are the same.
+     */
+    private static boolean sameRoads(RoadNetwork route1, RoadNetwork route2) {
+        List<Road> roads1 = route1.getRoads();
+        List<Road> roads2 = route2.getRoads();
+        if (roads1.size() != roads2.size()) return false;
+        for (int i = 0; i < roads1.size(); i++) {
+            if (roads1.get(i).getId() != roads2.get(i).getId()) return false;
+        }
+        return true;
+    }
+
+    /**
+     * Loads the network once and answers queries over a socket until the process is stopped.
+     *
+     * @param inputFile The input file path.
+     * @param args      The command line, with the server address second.
+     */
+    private static void runServer(String inputFile, String[] args) {
+        String address = args[1].substring("--serve=".length());
+        String searchMode = "dijkstra";
+        int landmarkCount = DEFAULT_LANDMARKS;
+        for (int i = 2; i < args.length; i++) {
+            if (args[i].startsWith("--search=")) {
+                searchMode = args[i].substring("--search=".length());
+            } else if (args[i].startsWith("--landmarks=")) {
+                landmarkCount = Integer.parseInt(args[i].substring("--landmarks=".length()));
+            } else {
+                System.out.println(USAGE);
+                return;
+            }
+        }
+
+        String mode = searchMode;
+        int landmarks = landmarkCount;
+        try (MapServer server = new MapServer(inputFile, (roadNetwork, file) -> createRouteFinder(mode, roadNetwork, file, landmarks, 0, null))) {
+            server.serve(address);
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * Creates the route search engine for a search mode.
+     *
+     * @param searchMode    The search mode.
+     * @param roadNetwork   The road network.
+     * @param inputFile     The input file path, next to which landmark tables are kept.
+     * @param landmarkCount The number of landmarks for the ALT mode.
+     * @param criterion     The road cost to minimize, 0 for the distance; only the Dijkstra modes support other costs.
+     * @param metrics       The counters the Dijkstra modes add their work to, or null.
+     * @return The route finder, or null if the mode is unknown or does not support the cost.
+     */
+    private static RouteFinder createRouteFinder(String searchMode, RoadNetwork roadNetwork, String inputFile, int landmarkCount, int criterion, SearchMetrics metrics) {
+        if (criterion < 0 || criterion >= roadNetwork.getGraph().criterionCount()) return null;
+        if (criterion > 0 && !searchMode.equals("dijkstra") && !searchMode.equals("bidirectional")) return null;
+        switch (searchMode) {
+            case "dijkstra": {
+                ShortestPathFinder shortestPathFinder = new ShortestPathFinder(roadNetwork, criterion);
+                shortestPathFinder.setMetrics(metrics);
+                return shortestPathFinder;
+            }
+            case "bidirectional": {
+                ShortestPathFinder shortestPathFinder = new ShortestPathFinder(roadNetwork, criterion);
+                shortestPathFinder.setMetrics(metrics);
+                return new RouteFinder() {
+                    @Override
+                    public RoadNetwork findFastestRoute(String startCity, String endCity) {
+                        return shortestPathFinder.findFastestRouteBidirectional(startCity, endCity);
+                    }
+
+                    @Override
+                    public int getSettledCount() {
+                        return shortestPathFinder.getSettledCount();
+                    }
+                };
+            }
+            case "astar":
+                return new AStarPathFinder(roadNetwork);
+            case "alt": {
+                // Landmark tables are kept next to the input and reused by later runs
+                LandmarkTable landmarks = LandmarkTable.loadOrCompute(roadNetwork.getGraph(), new File(inputFile + ".alt"), landmarkCount);
+                return new AStarPathFinder(roadNetwork, RouteHeuristic.EUCLIDEAN, landmarks);
+            }
+            case "ch":
+                return ContractionHierarchy.build(roadNetwork.getGraph());
+            case "overlay":
+                return OverlayGraph.build(roadNetwork.getGraph());
+            default:
+                return null;
+        }
+    }
+
+    /**
+     * Answers every query of a query file in parallel and writes the routes in query order.
+     *
+     * @param fileHandler The file handler.
+     * @param routeFinder The route search engine.
+     * @param roadNetwork The road network.
+     * @param queryFile   The query file path.
+     * @param outputFile  The output file path.
+     * @param criterion   The cost the route search engine minimizes, 0 for the distance.
+     */
+    private static void runBatch(FileHandler fileHandler, RouteFinder routeFinder, RoadNetwork roadNetwork, String queryFile, String outputFile,
+                                 int criterion) {
+        List<String[]> queries = fileHandler.readQueries(queryFile);
+        RoadNetwork[] routes = new RoadNetwork[queries.size()];
+        roadNetwork.getGraph(); // Built once, before the searches share it
+
+        long startTime = System.nanoTime();
+        IntStream.range(0, queries.size()).parallel()
+                .forEach(i -> routes[i] = routeFinder.findFastestRoute(queries.get(i)[0], queries.get(i)[1]));
+        double seconds = (System.nanoTime() - startTime) / 1e9;
+
+        fileHandler.writeRoutes(outputFile, queries, routes, criterion);
+        System.out.printf("Answered %d queries in %.3f s (%.1f queries/s) on %d threads%n", queries.size(), seconds,
+                queries.size() / Math.max(seconds, 1e-9), ForkJoinPool.getCommonPoolParallelism());
+        if (routeFinder instanceof RouteCache) {
+            RouteCache cache = (RouteCache) routeFinder;
+            System.out.printf("Route cache: %d hits, %d misses, %d evictions, %d/%d routes%n", cache.getHitCount(),
+                    cache.getMissCount(), cache.getEvictionCount(), cache.size(), cache.getCapacity());
+        }
     }
 }
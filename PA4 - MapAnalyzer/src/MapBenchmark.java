@@ -0,0 +1,115 @@
+import java.io.File;
+import java.io.IOException;
+import java.util.*;
+
+/**
+ * Measures loading, fastest route search and barely connected map building on synthetic
+ * networks of several kinds and sizes. Each measurement is repeated after warm-up runs and
+ * the median time is reported.
+ * <p>
+ * Usage: java MapBenchmark [--kinds=grid,geometric,scalefree,chain] [--sizes=1000,10000,100000]
+ * [--warmup=3] [--iterations=5]
+ */
+public class MapBenchmark {
+    private static final int QUERY_COUNT = 20;
+
+    private final int warmupCount;
+    private final int iterationCount;
+    private long checksum; // Keeps the results alive so the measured work is not optimized away
+
+    private MapBenchmark(int warmupCount, int iterationCount) {
+        this.warmupCount = warmupCount;
+        this.iterationCount = iterationCount;
+    }
+
+    public static void main(String[] args) throws IOException {
+        List<String> kinds = MapGenerator.KINDS;
+        List<Integer> sizes = List.of(1000, 10000, 100000);
+        int warmupCount = 3;
+        int iterationCount = 5;
+        for (String arg : args) {
+            if (arg.startsWith("--kinds=")) {
+                kinds = List.of(arg.substring("--kinds=".length()).split(","));
+            } else if (arg.startsWith("--sizes=")) {
+                sizes = new ArrayList<>();
+                for (String size : arg.substring("--sizes=".length()).split(",")) {
+                    sizes.add(Integer.parseInt(size));
+                }
+            } else if (arg.startsWith("--warmup=")) {
+                warmupCount = Integer.parseInt(arg.substring("--warmup=".length()));
+            } else if (arg.startsWith("--iterations=")) {
+                iterationCount = Integer.parseInt(arg.substring("--iterations=".length()));
+            } else {
+                System.out.println("Usage: java MapBenchmark [--kinds=grid,geometric,scalefree,chain]"
+                        + " [--sizes=1000,10000,100000] [--warmup=3] [--iterations=5]");
+                return;
+            }
+        }
+
+        MapBenchmark benchmark = new MapBenchmark(warmupCount, iterationCount);
+        System.out.printf("%-10s %8s %9s %-10s %12s%n", "map", "cities", "roads", "benchmark", "ms/op");
+        for (String kind : kinds) {
+            for (int size : sizes) {
+                benchmark.run(kind, size);
+            }
+        }
+        System.out.println("Checksum: " + benchmark.checksum);
+    }
+
+    private void run(String kind, int size) throws IOException {
+        File file = File.createTempFile("map-" + kind + "-" + size + "-", ".txt");
+        file.deleteOnExit();
+        MapGenerator.write(kind, size, 42, file);
+        FileHandler fileHandler = new FileHandler();
+        RoadNetwork roadNetwork = fileHandler.readInput(file.getPath());
+        RoadGraph graph = roadNetwork.getGraph();
+
+        Random random = new Random(7);
+        String[][] queries = new String[QUERY_COUNT][];
+        for (int i = 0; i < QUERY_COUNT; i++) {
+            queries[i] = new String[]{graph.cityName(random.nextInt(graph.cityCount())), graph.cityName(random.nextInt(graph.cityCount()))};
+        }
+        ShortestPathFinder shortestPathFinder = new ShortestPathFinder(roadNetwork);
+        BarelyConnectedMapBuilder builder = new BarelyConnectedMapBuilder(roadNetwork);
+
+        report(kind, graph, "load", measure(() -> fileHandler.readInput(file.getPath()).getGraph().roadCount()));
+        report(kind, graph, "dijkstra", measure(() -> {
+            long total = 0;
+            for (String[] query : queries) {
+                total += shortestPathFinder.findFastestRoute(query[0], query[1]).getTotalDistance();
+            }
+            return total;
+        }) / QUERY_COUNT);
+        report(kind, graph, "prim", measure(() -> builder.buildBarelyConnectedMap().getTotalDistance()));
+        report(kind, graph, "kruskal", measure(() -> builder.buildBarelyConnectedMapKruskal().getTotalDistance()));
+        report(kind, graph, "boruvka", measure(() -> builder.buildBarelyConnectedMapBoruvka().getTotalDistance()));
+    }
+
+    /**
+     * Runs a task after the warm-up runs and returns the median time of the measured runs.
+     */
+    private double measure(Task task) throws IOException {
+        for (int i = 0; i < warmupCount; i++) {
+            checksum += task.run();
+        }
+        double[] times = new double[iterationCount];
+        for (int i = 0; i < iterationCount; i++) {
+            long startTime = System.nanoTime();
+            checksum += task.run();
+            times[i] = (System.nanoTime() - startTime) / 1e6;
+        }
+        Arrays.sort(times);
+        return times[iterationCount / 2];
+    }
+
+    private static void report(String kind, RoadGraph graph, String benchmark, double milliseconds) {
+        System.out.printf("%-10s %8d %9d %-10s %12.3f%n", kind, graph.cityCount(), graph.roadCount(), benchmark, milliseconds);
+    }
+
+    /**
+     * A measured piece of work, returning a value derived from its result.
+     */
+    private interface Task {
+        long run() throws IOException;
+    }
+}
@@ -0,0 +1,144 @@
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+
+/**
+ * Generates synthetic road networks in the input format, for benchmarks.
+ * Every generated network is connected and its roads have distinct ids.
+ */
+public class MapGenerator {
+    public static final List<String> KINDS = List.of("grid", "geometric", "scalefree", "chain");
+
+    private final Random random;
+    private final List<int[]> roads = new ArrayList<>(); // {city1, city2, distance}
+
+    private MapGenerator(long seed) {
+        this.random = new Random(seed);
+    }
+
+    /**
+     * Generates a network and writes it as an input file, with a start and an end city far apart.
+     *
+     * @param kind      One of KINDS: "grid" (a square grid), "geometric" (random points joined to the
+     *                  points near them), "scalefree" (preferential attachment, a few large hubs)
+     *                  or "chain" (one long path).
+     * @param cityCount The number of cities, rounded down to a square for grids.
+     * @param seed      The random seed.
+     * @param file      The output file.
+     * @throws IOException If the file cannot be written.
+     */
+    public static void write(String kind, int cityCount, long seed, File file) throws IOException {
+        MapGenerator generator = new MapGenerator(seed);
+        switch (kind) {
+            case "grid":
+                generator.grid((int) Math.sqrt(cityCount));
+                break;
+            case "geometric":
+                generator.geometric(cityCount);
+                break;
+            case "scalefree":
+                generator.scaleFree(cityCount);
+                break;
+            case "chain":
+                generator.chain(cityCount);
+                break;
+            default:
+                throw new IllegalArgumentException("Unknown map kind: " + kind);
+        }
+        int lastCity = 0;
+        for (int[] road : generator.roads) {
+            lastCity = Math.max(lastCity, Math.max(road[0], road[1]));
+        }
+        try (PrintWriter writer = new PrintWriter(new BufferedWriter(new FileWriter(file, StandardCharsets.UTF_8)))) {
+            writer.println("C0\tC" + lastCity);
+            int id = 1;
+            for (int[] road : generator.roads) {
+                writer.println("C" + road[0] + "\tC" + road[1] + "\t" + road[2] + "\t" + id++);
+            }
+        }
+    }
+
+    private void grid(int side) {
+        for (int row = 0; row < side; row++) {
+            for (int column = 0; column < side; column++) {
+                int city = row * side + column;
+                if (column + 1 < side) addRoad(city, city + 1, 1 + random.nextInt(100));
+                if (row + 1 < side) addRoad(city, city + side, 1 + random.nextInt(100));
+            }
+        }
+    }
+
+    /**
+     * Joins every point to the points within a radius that gives about six roads per city,
+     * then joins the parts that are left separate.
+     */
+    private void geometric(int cityCount) {
+        double radius = Math.sqrt(6.0 / (Math.PI * cityCount));
+        int cells = Math.max(1, (int) (1 / radius));
+        double[] xs = new double[cityCount];
+        double[] ys = new double[cityCount];
+        List<List<Integer>> buckets = new ArrayList<>();
+        for (int i = 0; i < cells * cells; i++) {
+            buckets.add(new ArrayList<>());
+        }
+        for (int city = 0; city < cityCount; city++) {
+            xs[city] = random.nextDouble();
+            ys[city] = random.nextDouble();
+            buckets.get(cell(xs[city], cells) * cells + cell(ys[city], cells)).add(city);
+        }
+
+        DisjointSet parts = new DisjointSet(cityCount);
+        for (int city = 0; city < cityCount; city++) {
+            int cellX = cell(xs[city], cells);
+            int cellY = cell(ys[city], cells);
+            for (int x = Math.max(0, cellX - 1); x <= Math.min(cells - 1, cellX + 1); x++) {
+                for (int y = Math.max(0, cellY - 1); y <= Math.min(cells - 1, cellY + 1); y++) {
+                    for (int other : buckets.get(x * cells + y)) {
+                        double length = Math.hypot(xs[city] - xs[other], ys[city] - ys[other]);
+                        if (other > city && length <= radius) {
+                            addRoad(city, other, 1 + (int) (length * 1000));
+                            parts.union(city, other);
+                        }
+                    }
+                }
+            }
+        }
+        for (int city = 1; city < cityCount; city++) {
+            if (parts.union(city - 1, city)) {
+                addRoad(city - 1, city, 1 + (int) (Math.hypot(xs[city] - xs[city - 1], ys[city] - ys[city - 1]) * 1000));
+            }
+        }
+    }
+
+    private static int cell(double coordinate, int cells) {
+        return Math.min(cells - 1, (int) (coordinate * cells));
+    }
+
+    /**
+     * Adds every new city with two roads to cities picked in proportion to their road count.
+     */
+    private void scaleFree(int cityCount) {
+        List<Integer> roadEnds = new ArrayList<>();
+        for (int city = 1; city < cityCount; city++) {
+            Set<Integer> targets = new HashSet<>();
+            for (int i = 0; i < Math.min(2, city); i++) {
+                targets.add(roadEnds.isEmpty() ? 0 : roadEnds.get(random.nextInt(roadEnds.size())));
+            }
+            for (int target : targets) {
+                addRoad(target, city, 1 + random.nextInt(100));
+                roadEnds.add(target);
+                roadEnds.add(city);
+            }
+        }
+    }
+
+    private void chain(int cityCount) {
+        for (int city = 1; city < cityCount; city++) {
+            addRoad(city - 1, city, 1 + random.nextInt(100));
+        }
+    }
+
+    private void addRoad(int city1, int city2, int distance) {
+        roads.add(new int[]{city1, city2, distance});
+    }
+}
@@ -0,0 +1,255 @@
+import java.io.*;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.net.StandardProtocolFamily;
+import java.net.UnixDomainSocketAddress;
+import java.nio.channels.Channels;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.BiFunction;
+
+/**
+ * Answers queries on a road network that is loaded once, over a local TCP port or a
+ * Unix-domain socket. Every connection is served on its own pooled thread and sends one
+ * command per line; every reply ends with an empty line:
+ * <pre>
+ * ROUTE &lt;start city&gt; &lt;end city&gt;   the fastest route, formatted like the output file
+ * MST                             the size and length of the barely connected map
+ * RELOAD &lt;file&gt;                   loads another road file and swaps it in
+ * QUIT                            closes the connection
+ * </pre>
+ * The cities of ROUTE may be separated by a tab, like the fields of the sample input files, or
+ * by spaces when the line has no tab. A command that cannot be answered gets a reply starting
+ * with ERROR.
+ * Each command works on the snapshot that was current when it started, so a reload never
+ * disturbs the queries already running; they finish on the old network.
+ */
+public class MapServer implements Closeable {
+    private final BiFunction<RoadNetwork, String, RouteFinder> routeFinderFactory;
+    private final AtomicReference<Snapshot> snapshot = new AtomicReference<>();
+    private final ExecutorService workers = Executors.newCachedThreadPool(task -> {
+        Thread thread = new Thread(task, "map-server-connection");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private ServerSocketChannel serverChannel;
+    private Path socketFile;
+
+    /**
+     * Creates a server and loads its first road file.
+     *
+     * @param inputFile          The road file, text or compiled.
+     * @param routeFinderFactory Creates the route search engine of a network loaded from a file.
+     * @throws IOException If the file cannot be loaded.
+     */
+    public MapServer(String inputFile, BiFunction<RoadNetwork, String, RouteFinder> routeFinderFactory) throws IOException {
+        this.routeFinderFactory = routeFinderFactory;
+        reload(inputFile);
+    }
+
+    /**
+     * Loads a road file and makes it the network of the queries that start afterwards.
+     * The new snapshot is built completely before it is swapped in.
+     *
+     * @param inputFile The road file, text or compiled.
+     * @return The new snapshot.
+     * @throws IOException If the file does not exist or has no roads.
+     * @throws RuntimeException If a line of the file is malformed.
+     */
+    public synchronized Snapshot reload(String inputFile) throws IOException {
+        if (!new File(inputFile).isFile()) throw new FileNotFoundException("No such file");
+        RoadNetwork roadNetwork = new FileHandler().readInput(inputFile);
+        if (roadNetwork.getRoads().isEmpty()) throw new IOException("No roads in " + inputFile);
+        RouteFinder routeFinder = routeFinderFactory.apply(roadNetwork, inputFile);
+        if (routeFinder == null) throw new IOException("No route finder for " + inputFile);
+        Snapshot loaded = new Snapshot(inputFile, roadNetwork, routeFinder);
+        snapshot.set(loaded);
+        return loaded;
+    }
+
+    /**
+     * Gets the snapshot the next query will use.
+     *
+     * @return The current snapshot.
+     */
+    public Snapshot getSnapshot() {
+        return snapshot.get();
+    }
+
+    /**
+     * Listens on an address and serves connections until the server is closed.
+     *
+     * @param address A port number to listen on the loopback interface, or the path of a Unix-domain socket.
+     * @throws IOException If the address cannot be bound.
+     */
+    public void serve(String address) throws IOException {
+        SocketAddress socketAddress;
+        if (address.matches("\\d+")) {
+            serverChannel = ServerSocketChannel.open(StandardProtocolFamily.INET);
+            socketAddress = new InetSocketAddress(InetAddress.getLoopbackAddress(), Integer.parseInt(address));
+        } else {
+            // A socket file left by an earlier run would make the bind fail
+            socketFile = Path.of(address);
+            Files.deleteIfExists(socketFile);
+            serverChannel = ServerSocketChannel.open(StandardProtocolFamily.UNIX);
+            socketAddress = UnixDomainSocketAddress.of(socketFile);
+        }
+        serverChannel.bind(socketAddress);
+        System.out.println("Serving " + getSnapshot().getInputFile() + " on " + serverChannel.getLocalAddress());
+
+        try {
+            while (serverChannel.isOpen()) {
+                SocketChannel connection = serverChannel.accept();
+                workers.execute(() -> handle(connection));
+            }
+        } catch (IOException e) {
+            if (serverChannel.isOpen()) throw e;
+        }
+    }
+
+    /**
+     * Answers the commands of one connection until it sends QUIT or closes.
+     */
+    private void handle(SocketChannel connection) {
+        try (connection;
+             BufferedReader reader = new BufferedReader(new InputStreamReader(Channels.newInputStream(connection), StandardCharsets.UTF_8));
+             PrintWriter writer = new PrintWriter(new BufferedWriter(new OutputStreamWriter(Channels.newOutputStream(connection), StandardCharsets.UTF_8)))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                String[] fields = line.trim().split("\\s+", 2);
+                if (fields[0].equalsIgnoreCase("QUIT")) break;
+                answer(fields[0].toUpperCase(Locale.ROOT), fields.length > 1 ? fields[1] : "", writer);
+                writer.println();
+                writer.flush();
+            }
+        } catch (IOException e) {
+            // The client went away; nothing is left to answer
+        }
+    }
+
+    private void answer(String command, String arguments, PrintWriter writer) {
+        Snapshot current = getSnapshot();
+        switch (command) {
+            case "ROUTE": {
+                String[] cities = arguments.indexOf('\t') >= 0 ? arguments.split("\t") : arguments.split("\\s+");
+                if (cities.length != 2) {
+                    writer.println("ERROR Usage: ROUTE <start city> <end city>");
+                    return;
+                }
+                RoadGraph graph = current.getRoadNetwork().getGraph();
+                for (String city : cities) {
+                    if (graph.cityId(city) < 0) {
+                        writer.println("ERROR Unknown city: " + city);
+                        return;
+                    }
+                }
+                RoadNetwork route = current.getRouteFinder().findFastestRoute(cities[0], cities[1]);
+                if (route.getRoads().isEmpty() && !cities[0].equals(cities[1])) {
+                    writer.println("No Route from " + cities[0] + " to " + cities[1]);
+                    return;
+                }
+                writer.println("Fastest Route from " + cities[0] + " to " + cities[1] + " (" + route.getTotalDistance() + " KM):");
+                route.getRoads().forEach(writer::println);
+                return;
+            }
+            case "MST":
+                writer.printf(Locale.US, "Barely Connected Map: %d roads, %d KM, %.2f of the original map%n",
+                        current.getBarelyConnectedRoadCount(), current.getBarelyConnectedDistance(),
+                        (double) current.getBarelyConnectedDistance() / current.getRoadNetwork().getTotalDistance());
+                return;
+            case "RELOAD":
+                try {
+                    Snapshot loaded = reload(arguments.trim());
+                    writer.println("Loaded " + loaded.getInputFile() + ": " + loaded.getRoadNetwork().getCities().size()
+                            + " cities, " + loaded.getRoadNetwork().getRoads().size() + " roads");
+                } catch (IOException | RuntimeException e) {
+                    // A malformed file must not end the connection; the old snapshot stays current
+                    writer.println("ERROR Cannot load " + arguments.trim() + ": " + e.getMessage());
+                }
+                return;
+            default:
+                writer.println("ERROR Unknown command: " + command);
+        }
+    }
+
+    /**
+     * Stops accepting connections. Connections already open are served until they close.
+     *
+     * @throws IOException If the socket cannot be closed.
+     */
+    @Override
+    public void close() throws IOException {
+        workers.shutdown();
+        if (serverChannel != null) serverChannel.close();
+        if (socketFile != null) Files.deleteIfExists(socketFile);
+    }
+
+    /**
+     * A loaded network with everything the queries need, built before it is shared and never changed.
+     */
+    public static class Snapshot {
+        private final String inputFile;
+        private final RoadNetwork roadNetwork;
+        private final RouteFinder routeFinder;
+        private final int barelyConnectedRoadCount;
+        private final int barelyConnectedDistance;
+
+        Snapshot(String inputFile, RoadNetwork roadNetwork, RouteFinder routeFinder) {
+            this.inputFile = inputFile;
+            this.roadNetwork = roadNetwork;
+            this.routeFinder = routeFinder;
+            roadNetwork.getGraph().components(); // Built now, not lazily by the first queries
+            RoadNetwork barelyConnectedMap = new BarelyConnectedMapBuilder(roadNetwork).buildBarelyConnectedMap();
+            this.barelyConnectedRoadCount = barelyConnectedMap.getRoads().size();
+            this.barelyConnectedDistance = barelyConnectedMap.getTotalDistance();
+        }
+
+        /**
+         * Gets the file the network was loaded from.
+         * @return The file path.
+         */
+        public String getInputFile() {
+            return inputFile;
+        }
+
+        /**
+         * Gets the network.
+         * @return The road network.
+         */
+        public RoadNetwork getRoadNetwork() {
+            return roadNetwork;
+        }
+
+        /**
+         * Gets the route search engine of the network.
+         * @return The route finder.
+         */
+        public RouteFinder getRouteFinder() {
+            return routeFinder;
+        }
+
+        /**
+         * Gets the number of roads of the barely connected map.
+         * @return The number of roads.
+         */
+        public int getBarelyConnectedRoadCount() {
+            return barelyConnectedRoadCount;
+        }
+
+        /**
+         * Gets the total distance of the barely connected map.
+         * @return The total distance.
+         */
+        public int getBarelyConnectedDistance() {
+            return barelyConnectedDistance;
+        }
+    }
+}
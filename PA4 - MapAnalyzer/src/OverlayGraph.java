@@ -0,0 +1,413 @@
+import java.util.*;
+import java.util.stream.IntStream;
+
+/**
+ * Multi-level overlay over a partitioned graph. The boundary cities of every cell, the ones
+ * with a road leaving the cell, are joined by a clique of their fastest distances inside the
+ * cell. A query follows the roads only in the cells that contain the start or the end city
+ * and crosses every other cell through the clique of the highest level that does not contain
+ * them, then unpacks the clique edges of the result back to roads inside their cells.
+ * Queries may run from several threads at once.
+ * <p>
+ * A clique grows with the square of the boundary of its cell, so cells with more than
+ * MAX_BOUNDARY_CITIES boundary cities get none, and all the cliques together hold at most about
+ * as many entries as the graph holds ints, smaller cells first. A cell without a clique is
+ * searched through its roads and the cliques of its cells one level down. A level whose cliques
+ * cover less than three quarters of the cities is not used, nor any level above it; on networks without
+ * small cuts, such as scale-free ones, the overlay is then left off and queries run as Dijkstra.
+ */
+public class OverlayGraph implements RouteFinder {
+    public static final int DEFAULT_CELL_SIZE = 256;
+    public static final int DEFAULT_LEVEL_COUNT = 2;
+    public static final int DEFAULT_FANOUT = 16;
+    public static final int MAX_BOUNDARY_CITIES = 512;
+
+    private final RoadGraph graph;
+    private final GraphPartition partition;
+
+    // Per level: the boundary cities of every cell, the boundary index of every city (-1 inside) and the cliques
+    private final int[][] boundaryOffsets;
+    private final int[][] boundaryCities;
+    private final int[][] boundaryIndexes;
+    private final int[][][] cliques;
+
+    private final ThreadLocal<QueryState> queryStates;
+
+    // The number of levels whose cliques are used
+    private int usedLevelCount;
+
+    private OverlayGraph(RoadGraph graph, GraphPartition partition) {
+        this.graph = graph;
+        this.partition = partition;
+        int levels = partition.levelCount() + 1;
+        boundaryOffsets = new int[levels][];
+        boundaryCities = new int[levels][];
+        boundaryIndexes = new int[levels][];
+        cliques = new int[levels][][];
+        queryStates = ThreadLocal.withInitial(() -> new QueryState(graph.cityCount()));
+    }
+
+    /**
+     * Builds the overlay of a graph with the default partition.
+     *
+     * @param graph The compact graph.
+     * @return The overlay graph.
+     */
+    public static OverlayGraph build(RoadGraph graph) {
+        return build(graph, GraphPartition.build(graph, DEFAULT_CELL_SIZE, DEFAULT_LEVEL_COUNT, DEFAULT_FANOUT));
+    }
+
+    /**
+     * Builds the overlay of a partitioned graph. The cells of every level are processed in parallel.
+     *
+     * @param graph     The compact graph.
+     * @param partition The partition of its cities.
+     * @return The overlay graph.
+     */
+    public static OverlayGraph build(RoadGraph graph, GraphPartition partition) {
+        OverlayGraph overlay = new OverlayGraph(graph, partition);
+        // About the number of ints of the graph: 4 per road, 4 per adjacency slot (two per road), the order and the offsets
+        long budget = 13L * graph.roadCount() + graph.cityCount();
+        for (int level = 1; level <= partition.levelCount(); level++) {
+            overlay.indexCells(level);
+            int currentLevel = level;
+            overlay.cliques[level] = new int[partition.cellCount(level)][];
+            int[] chosenCells = overlay.chooseCells(level, budget);
+            if (overlay.coveredCityCount(level, chosenCells) * 4L < graph.cityCount() * 3L) break;
+            for (int cell : chosenCells) {
+                budget -= overlay.boundaryCount(level, cell) * (long) overlay.boundaryCount(level, cell);
+            }
+            IntStream.of(chosenCells).parallel()
+                    .forEach(cell -> overlay.cliques[currentLevel][cell] = overlay.computeClique(currentLevel, cell));
+            overlay.usedLevelCount = level;
+        }
+        return overlay;
+    }
+
+    /**
+     * Chooses the cells of a level that get a clique: the ones with at most MAX_BOUNDARY_CITIES
+     * boundary cities, smallest first, as long as their cliques fit in the budget.
+     *
+     * @return The chosen cells.
+     */
+    private int[] chooseCells(int level, long budget) {
+        int cellCount = partition.cellCount(level);
+        long[] bySize = new long[cellCount];
+        for (int cell = 0; cell < cellCount; cell++) {
+            bySize[cell] = (long) boundaryCount(level, cell) << 32 | cell;
+        }
+        Arrays.sort(bySize);
+        int[] chosenCells = new int[cellCount];
+        int chosenCount = 0;
+        for (long entry : bySize) {
+            int borderCount = (int) (entry >>> 32);
+            long size = (long) borderCount * borderCount;
+            if (borderCount > MAX_BOUNDARY_CITIES || size > budget) break;
+            budget -= size;
+            chosenCells[chosenCount++] = (int) entry;
+        }
+        return Arrays.copyOf(chosenCells, chosenCount);
+    }
+
+    /**
+     * Counts the cities that lie in some cells of a level.
+     */
+    private long coveredCityCount(int level, int[] cells) {
+        boolean[] chosen = new boolean[partition.cellCount(level)];
+        for (int cell : cells) {
+            chosen[cell] = true;
+        }
+        long count = 0;
+        for (int city = 0; city < graph.cityCount(); city++) {
+            if (chosen[partition.cell(level, city)]) count++;
+        }
+        return count;
+    }
+
+    private int boundaryCount(int level, int cell) {
+        return boundaryOffsets[level][cell + 1] - boundaryOffsets[level][cell];
+    }
+
+    /**
+     * Lists the boundary cities of every cell of a level.
+     */
+    private void indexCells(int level) {
+        int cityCount = graph.cityCount();
+        int cellCount = partition.cellCount(level);
+        boolean[] boundary = new boolean[cityCount];
+        for (int road = 0; road < graph.roadCount(); road++) {
+            int city1 = graph.roadCity1(road);
+            int city2 = graph.roadCity2(road);
+            if (partition.cell(level, city1) != partition.cell(level, city2)) {
+                boundary[city1] = true;
+                boundary[city2] = true;
+            }
+        }
+
+        int[] borderOffsets = new int[cellCount + 1];
+        for (int city = 0; city < cityCount; city++) {
+            if (boundary[city]) borderOffsets[partition.cell(level, city) + 1]++;
+        }
+        for (int cell = 0; cell < cellCount; cell++) {
+            borderOffsets[cell + 1] += borderOffsets[cell];
+        }
+        int[] borders = new int[borderOffsets[cellCount]];
+        int[] borderIndexes = new int[cityCount];
+        int[] nextBorder = Arrays.copyOf(borderOffsets, cellCount);
+        for (int city = 0; city < cityCount; city++) {
+            int cell = partition.cell(level, city);
+            if (boundary[city]) {
+                borderIndexes[city] = nextBorder[cell] - borderOffsets[cell];
+                borders[nextBorder[cell]++] = city;
+            } else {
+                borderIndexes[city] = -1;
+            }
+        }
+        boundaryOffsets[level] = borderOffsets;
+        boundaryCities[level] = borders;
+        boundaryIndexes[level] = borderIndexes;
+    }
+
+    /**
+     * Computes the fastest distances between the boundary cities of a cell, using only its roads
+     * and the cliques of its cells one level down.
+     *
+     * @return The row-major clique, Integer.MAX_VALUE where there is no route inside the cell.
+     */
+    private int[] computeClique(int level, int cell) {
+        int first = boundaryOffsets[level][cell];
+        int borderCount = boundaryOffsets[level][cell + 1] - first;
+        int[] clique = new int[borderCount * borderCount];
+        QueryState state = queryStates.get();
+        for (int from = 0; from < borderCount; from++) {
+            search(state, boundaryCities[level][first + from], -1, level, cell);
+            for (int to = 0; to < borderCount; to++) {
+                clique[from * borderCount + to] = state.distances[boundaryCities[level][first + to]];
+            }
+        }
+        return clique;
+    }
+
+    /**
+     * Gets the partition of the overlay.
+     *
+     * @return The partition.
+     */
+    public GraphPartition getPartition() {
+        return partition;
+    }
+
+    /**
+     * Gets the number of clique edges of a level.
+     *
+     * @param level The level, from 1.
+     * @return The number of clique edges.
+     */
+    public long cliqueEdgeCount(int level) {
+        if (cliques[level] == null) return 0;
+        long edges = 0;
+        for (int[] clique : cliques[level]) {
+            if (clique != null) edges += clique.length;
+        }
+        return edges;
+    }
+
+    /**
+     * Gets the number of cells of a level that have a clique.
+     *
+     * @param level The level, from 1.
+     * @return The number of cells crossed through a clique.
+     */
+    public int cliqueCellCount(int level) {
+        if (cliques[level] == null) return 0;
+        int count = 0;
+        for (int[] clique : cliques[level]) {
+            if (clique != null) count++;
+        }
+        return count;
+    }
+
+    /**
+     * Gets the number of cities settled by the last query of the calling thread.
+     *
+     * @return The number of settled cities.
+     */
+    @Override
+    public int getSettledCount() {
+        return queryStates.get().settledCount;
+    }
+
+    /**
+     * Finds the fastest route between two cities. The route has the same length as the one of
+     * ShortestPathFinder, but when several fastest routes exist a different one may be returned.
+     *
+     * @param startCity The starting city.
+     * @param endCity   The ending city.
+     * @return A RoadNetwork representing the fastest route.
+     */
+    @Override
+    public RoadNetwork findFastestRoute(String startCity, String endCity) {
+        int start = graph.cityId(startCity);
+        int end = graph.cityId(endCity);
+        queryStates.get().settledCount = 0;
+        if (start < 0 || end < 0 || !graph.components().connected(start, end)) return new RoadNetwork();
+        int[] roads = findRoute(start, end);
+        return roads == null ? new RoadNetwork() : graph.toRoadNetwork(roads);
+    }
+
+    /**
+     * Finds the fastest route between two cities.
+     *
+     * @param start The id of the starting city.
+     * @param end   The id of the ending city.
+     * @return The road indexes of the route in travel order, or null if the end city is unreachable.
+     */
+    public int[] findRoute(int start, int end) {
+        QueryState state = queryStates.get();
+        state.settledCount = 0;
+        List<Integer> roads = new ArrayList<>();
+        if (!appendRoute(state, start, end, partition.levelCount() + 1, 0, roads)) return null;
+        return roads.stream().mapToInt(Integer::intValue).toArray();
+    }
+
+    /**
+     * Finds the fastest route between two cities of a cell and adds its roads to a list.
+     * Clique edges of the route are unpacked by the same search inside their own cell.
+     *
+     * @return false if the end city is unreachable inside the cell.
+     */
+    private boolean appendRoute(QueryState state, int start, int end, int topLevel, int topCell, List<Integer> roads) {
+        search(state, start, end, topLevel, topCell);
+        if (state.distances[end] == Integer.MAX_VALUE) return false;
+
+        // Copy the hops out of the state before the unpacking searches reuse it
+        int hopCount = 0;
+        for (int city = end; city != start; city = state.previousCities[city]) {
+            hopCount++;
+        }
+        int[] hopCities = new int[hopCount];
+        int[] hopRoads = new int[hopCount];
+        int[] hopLevels = new int[hopCount];
+        int hop = hopCount;
+        for (int city = end; city != start; city = state.previousCities[city]) {
+            hop--;
+            hopCities[hop] = city;
+            hopRoads[hop] = state.previousRoads[city];
+            hopLevels[hop] = state.previousLevels[city];
+        }
+
+        int from = start;
+        for (hop = 0; hop < hopCount; hop++) {
+            if (hopRoads[hop] >= 0) {
+                roads.add(hopRoads[hop]);
+            } else {
+                appendRoute(state, from, hopCities[hop], hopLevels[hop], partition.cell(hopLevels[hop], from), roads);
+            }
+            from = hopCities[hop];
+        }
+        return true;
+    }
+
+    /**
+     * Runs the multi-level search from a city, staying inside one cell of a level.
+     *
+     * @param state    The search state.
+     * @param start    The id of the starting city.
+     * @param end      The id of the ending city, or -1 to settle the whole cell.
+     * @param topLevel The level of the cell, above the partition for the whole graph.
+     * @param topCell  The cell.
+     */
+    private void search(QueryState state, int start, int end, int topLevel, int topCell) {
+        boolean bounded = topLevel <= partition.levelCount();
+        state.reset();
+        state.reach(start, 0, -1, -1, 0);
+        while (!state.queue.isEmpty()) {
+            int city = state.queue.poll();
+            state.settledCount++;
+            if (city == end) break;
+            int distance = state.distances[city];
+            int level = queryLevel(city, start, end, topLevel);
+            if (level > 0) {
+                // The city is a boundary city of a cell without the start or the end: cross it through the clique
+                int cell = partition.cell(level, city);
+                int first = boundaryOffsets[level][cell];
+                int borderCount = boundaryOffsets[level][cell + 1] - first;
+                int[] clique = cliques[level][cell];
+                int from = boundaryIndexes[level][city];
+                for (int to = 0; to < borderCount; to++) {
+                    int weight = clique[from * borderCount + to];
+                    if (to != from && weight != Integer.MAX_VALUE) {
+                        state.reach(boundaryCities[level][first + to], distance + weight, city, -1, level);
+                    }
+                }
+            }
+            for (int edge = graph.firstEdge(city); edge < graph.endEdge(city); edge++) {
+                int target = graph.target(edge);
+                if (bounded && partition.cell(topLevel, target) != topCell) continue;
+                // Roads inside a crossed cell are already covered by its clique
+                if (level > 0 && partition.cell(level, target) == partition.cell(level, city)) continue;
+                state.reach(target, distance + graph.weight(edge), city, graph.road(edge), 0);
+            }
+        }
+    }
+
+    /**
+     * Gets the highest level below the top level whose cell of a city has a clique and contains
+     * neither the start nor the end city.
+     *
+     * @return The level, 0 if there is no such cell.
+     */
+    private int queryLevel(int city, int start, int end, int topLevel) {
+        for (int level = Math.min(topLevel - 1, usedLevelCount); level > 0; level--) {
+            int cell = partition.cell(level, city);
+            if (cliques[level][cell] != null && cell != partition.cell(level, start)
+                    && (end < 0 || cell != partition.cell(level, end))) return level;
+        }
+        return 0;
+    }
+
+    /**
+     * Per-thread search state of a query. Only the touched cities are reset between queries.
+     */
+    private static class QueryState {
+        private final IndexedMinHeap queue;
+        private final int[] distances;
+        private final int[] previousCities;
+        private final int[] previousRoads;
+        private final int[] previousLevels;
+        private final int[] touched;
+        private int touchedCount;
+        private int settledCount;
+
+        QueryState(int cityCount) {
+            queue = new IndexedMinHeap(cityCount);
+            distances = new int[cityCount];
+            previousCities = new int[cityCount];
+            previousRoads = new int[cityCount];
+            previousLevels = new int[cityCount];
+            touched = new int[cityCount];
+            Arrays.fill(distances, Integer.MAX_VALUE);
+        }
+
+        void reset() {
+            for (int i = 0; i < touchedCount; i++) {
+                distances[touched[i]] = Integer.MAX_VALUE;
+            }
+            touchedCount = 0;
+            queue.clear();
+        }
+
+        /**
+         * Reaches a city by a road, or by a clique edge of a level when the road is -1.
+         */
+        void reach(int city, int distance, int previousCity, int road, int level) {
+            if (distance >= distances[city]) return;
+            if (distances[city] == Integer.MAX_VALUE) touched[touchedCount++] = city;
+            distances[city] = distance;
+            previousCities[city] = previousCity;
+            previousRoads[city] = road;
+            previousLevels[city] = level;
+            queue.push(city, IndexedMinHeap.key(distance, 0));
+        }
+    }
+}
@@ -0,0 +1,225 @@
+import java.util.*;
+
+/**
+ * Finds every Pareto-optimal route between two cities when the roads have several costs:
+ * the routes that no other route beats or equals on every cost at once. Labels (a city with
+ * the costs of one way of reaching it) are settled in lexicographic order of their costs, so
+ * a settled label is never dominated by a label settled later. Labels that are dominated by a
+ * settled label of their city or of the end city are dropped.
+ * <p>
+ * The labels are kept in primitive arrays with the costs of a label next to each other, the
+ * settled labels of every city in an int array and the queue in a binary heap of label ids.
+ * The number of Pareto-optimal routes can grow quickly with the number of costs, so this is
+ * meant for a few costs on moderate networks.
+ */
+public class ParetoRouteFinder {
+    private final RoadNetwork roadNetwork;
+    // The number of labels settled by the last search of every thread
+    private final ThreadLocal<int[]> lastSettledCounts = ThreadLocal.withInitial(() -> new int[1]);
+
+    public ParetoRouteFinder(RoadNetwork roadNetwork) {
+        this.roadNetwork = roadNetwork;
+    }
+
+    /**
+     * Gets the number of labels settled by the last search of the calling thread.
+     *
+     * @return The number of settled labels.
+     */
+    public int getSettledCount() {
+        return lastSettledCounts.get()[0];
+    }
+
+    /**
+     * Finds the Pareto-optimal routes between two cities over all the costs of the roads.
+     *
+     * @param startCity The starting city.
+     * @param endCity   The ending city.
+     * @return The routes in lexicographic order of their costs, distance first.
+     */
+    public List<RoadNetwork> findParetoRoutes(String startCity, String endCity) {
+        RoadGraph graph = roadNetwork.getGraph();
+        List<RoadNetwork> routes = new ArrayList<>();
+        for (int[] path : findRoutes(graph.cityId(startCity), graph.cityId(endCity))) {
+            routes.add(graph.toRoadNetwork(path));
+        }
+        return routes;
+    }
+
+    /**
+     * Finds the Pareto-optimal routes between two cities of the graph.
+     *
+     * @param start The id of the starting city.
+     * @param end   The id of the ending city.
+     * @return The road indexes of each route, in lexicographic order of their costs.
+     */
+    public List<int[]> findRoutes(int start, int end) {
+        int[] settledCount = lastSettledCounts.get();
+        settledCount[0] = 0;
+        List<int[]> routes = new ArrayList<>();
+        if (start < 0 || end < 0) return routes;
+        RoadGraph graph = roadNetwork.getGraph();
+        Labels labels = new Labels(graph.criterionCount());
+        int[][] settledLabels = new int[graph.cityCount()][];
+        int[] settledCounts = new int[graph.cityCount()];
+        LabelQueue queue = new LabelQueue(labels);
+        queue.push(labels.add(start, -1, -1, graph));
+
+        while (!queue.isEmpty()) {
+            int label = queue.poll();
+            int city = labels.city(label);
+            if (labels.isDominated(label, settledLabels[city], settledCounts[city])
+                    || labels.isDominated(label, settledLabels[end], settledCounts[end])) continue;
+            if (settledLabels[city] == null) {
+                settledLabels[city] = new int[4];
+            } else if (settledCounts[city] == settledLabels[city].length) {
+                settledLabels[city] = Arrays.copyOf(settledLabels[city], settledCounts[city] * 2);
+            }
+            settledLabels[city][settledCounts[city]++] = label;
+            settledCount[0]++;
+            if (city == end) continue;
+
+            for (int edge = graph.firstEdge(city); edge < graph.endEdge(city); edge++) {
+                int neighborCity = graph.target(edge);
+                int next = labels.add(neighborCity, label, edge, graph);
+                if (labels.isDominated(next, settledLabels[neighborCity], settledCounts[neighborCity])
+                        || labels.isDominated(next, settledLabels[end], settledCounts[end])) {
+                    labels.removeLast();
+                } else {
+                    queue.push(next);
+                }
+            }
+        }
+
+        for (int i = 0; i < settledCounts[end]; i++) {
+            routes.add(labels.path(settledLabels[end][i]));
+        }
+        return routes;
+    }
+
+    /**
+     * Growing arrays of labels: the city, the previous label, the road taken from it and the costs.
+     */
+    private static class Labels {
+        private final int criterionCount;
+        private int[] cities = new int[1024];
+        private int[] previousLabels = new int[1024];
+        private int[] roads = new int[1024];
+        private long[] costs;
+        private int size;
+
+        private Labels(int criterionCount) {
+            this.criterionCount = criterionCount;
+            this.costs = new long[1024 * criterionCount];
+        }
+
+        /**
+         * Adds the label reached from a label over an adjacency slot, or the start label if the slot is -1.
+         */
+        private int add(int city, int previousLabel, int edge, RoadGraph graph) {
+            if (size == cities.length) {
+                cities = Arrays.copyOf(cities, size * 2);
+                previousLabels = Arrays.copyOf(previousLabels, size * 2);
+                roads = Arrays.copyOf(roads, size * 2);
+                costs = Arrays.copyOf(costs, size * 2 * criterionCount);
+            }
+            cities[size] = city;
+            previousLabels[size] = previousLabel;
+            roads[size] = edge < 0 ? -1 : graph.road(edge);
+            for (int criterion = 0; criterion < criterionCount; criterion++) {
+                costs[size * criterionCount + criterion] = edge < 0 ? 0
+                        : costs[previousLabel * criterionCount + criterion] + graph.weight(edge, criterion);
+            }
+            return size++;
+        }
+
+        private void removeLast() {
+            size--;
+        }
+
+        private int city(int label) {
+            return cities[label];
+        }
+
+        private int compare(int label1, int label2) {
+            for (int criterion = 0; criterion < criterionCount; criterion++) {
+                int order = Long.compare(costs[label1 * criterionCount + criterion], costs[label2 * criterionCount + criterion]);
+                if (order != 0) return order;
+            }
+            return Integer.compare(label1, label2);
+        }
+
+        /**
+         * Checks if one of the first count labels of an array is at most as costly as a label on every cost.
+         */
+        private boolean isDominated(int label, int[] others, int count) {
+            for (int i = 0; i < count; i++) {
+                int other = others[i];
+                boolean dominates = true;
+                for (int criterion = 0; criterion < criterionCount && dominates; criterion++) {
+                    dominates = costs[other * criterionCount + criterion] <= costs[label * criterionCount + criterion];
+                }
+                if (dominates) return true;
+            }
+            return false;
+        }
+
+        private int[] path(int label) {
+            int length = 0;
+            for (int current = label; previousLabels[current] >= 0; current = previousLabels[current]) {
+                length++;
+            }
+            int[] path = new int[length];
+            for (int current = label; previousLabels[current] >= 0; current = previousLabels[current]) {
+                path[--length] = roads[current];
+            }
+            return path;
+        }
+    }
+
+    /**
+     * Binary min-heap of label ids in lexicographic order of their costs. Unlike the city heap
+     * of the route searches, a city can have several labels in the queue at once.
+     */
+    private static class LabelQueue {
+        private final Labels labels;
+        private int[] heap = new int[1024];
+        private int size;
+
+        private LabelQueue(Labels labels) {
+            this.labels = labels;
+        }
+
+        private boolean isEmpty() {
+            return size == 0;
+        }
+
+        private void push(int label) {
+            if (size == heap.length) heap = Arrays.copyOf(heap, size * 2);
+            int position = size++;
+            while (position > 0) {
+                int parent = (position - 1) >>> 1;
+                if (labels.compare(heap[parent], label) <= 0) break;
+                heap[position] = heap[parent];
+                position = parent;
+            }
+            heap[position] = label;
+        }
+
+        private int poll() {
+            int top = heap[0];
+            int last = heap[--size];
+            int position = 0;
+            while (true) {
+                int child = 2 * position + 1;
+                if (child >= size) break;
+                if (child + 1 < size && labels.compare(heap[child + 1], heap[child]) < 0) child++;
+                if (labels.compare(last, heap[child]) <= 0) break;
+                heap[position] = heap[child];
+                position = child;
+            }
+            if (size > 0) heap[position] = last;
+            return top;
+        }
+    }
+}
@@ -1,17 +1,44 @@
+import java.util.Comparator;
+
 /**
  * Represents a road between two cities.
  */
 public class Road {
+    /**
+     * The extra weights of a road that only has a distance.
+     */
+    public static final int[] NO_EXTRA_WEIGHTS = new int[0];
+
+    /**
+     * Orders roads by distance and then by id.
+     */
+    public static final Comparator<Road> DISTANCE_ORDER = Comparator.comparingInt(Road::getDistance).thenComparingInt(Road::getId);
+
     private final String city1;
     private final String city2;
     private final int distance;
     private final int id;
+    private final int[] extraWeights;
 
     public Road(String city1, String city2, int distance, int id) {
+        this(city1, city2, distance, id, NO_EXTRA_WEIGHTS);
+    }
+
+    /**
+     * Creates a road with more costs than its distance, such as travel time or toll.
+     *
+     * @param city1        The first city.
+     * @param city2        The second city.
+     * @param distance     The distance of the road.
+     * @param id           The unique ID of the road.
+     * @param extraWeights The other costs of the road.
+     */
+    public Road(String city1, String city2, int distance, int id, int[] extraWeights) {
         this.city1 = city1;
         this.city2 = city2;
         this.distance = distance;
         this.id = id;
+        this.extraWeights = extraWeights;
     }
 
     /**
@@ -50,8 +77,42 @@ public class Road {
         return id;
     }
 
+    /**
+     * Gets the costs of the road other than its distance.
+     *
+     * @return The other costs, empty if there are none.
+     */
+    public int[] getExtraWeights() {
+        return extraWeights;
+    }
+
+    /**
+     * Gets a cost of the road.
+     *
+     * @param criterion 0 for the distance, 1 and up for the other costs.
+     * @return The cost, 0 if the road has no such cost.
+     */
+    public int getWeight(int criterion) {
+        if (criterion == 0) return distance;
+        return criterion <= extraWeights.length ? extraWeights[criterion - 1] : 0;
+    }
+
+    /**
+     * Gets the city at the other end of the road.
+     *
+     * @param city One end of the road.
+     * @return The other end.
+     */
+    public String otherCity(String city) {
+        return city1.equals(city) ? city2 : city1;
+    }
+
     @Override
     public String toString() {
-        return city1 + "\t" + city2 + "\t" + distance + "\t" + id;
+        StringBuilder text = new StringBuilder(city1 + "\t" + city2 + "\t" + distance + "\t" + id);
+        for (int weight : extraWeights) {
+            text.append('\t').append(weight);
+        }
+        return text.toString();
     }
 }
@@ -0,0 +1,216 @@
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.NoSuchElementException;
+
+/**
+ * Reads whitespace-separated fields line by line straight from the bytes of a UTF-8 file.
+ * Numbers are parsed from the bytes without creating strings, and every distinct city name
+ * is decoded only once; later occurrences return the same String.
+ */
+public class RoadFileReader implements Closeable {
+    private static final int MAX_FIELDS = 8;
+
+    private final InputStream in;
+    private final byte[] buffer = new byte[1 << 16];
+    private int bufferLength;
+    private int bufferPosition;
+
+    private byte[] line = new byte[256];
+    private int lineLength;
+    private final int[] fieldStarts = new int[MAX_FIELDS];
+    private final int[] fieldEnds = new int[MAX_FIELDS];
+    private int fieldCount;
+    private int lineNumber;
+
+    // Open-addressing table of the names decoded so far
+    private byte[][] nameBytes = new byte[1024][];
+    private String[] names = new String[1024];
+    private int nameCount;
+
+    public RoadFileReader(InputStream in) {
+        this.in = in;
+    }
+
+    /**
+     * Moves to the next line that has at least one field.
+     *
+     * @return true if there is such a line, false at the end of the file.
+     * @throws IOException If the file cannot be read.
+     */
+    public boolean nextLine() throws IOException {
+        while (readLine()) {
+            splitFields();
+            if (fieldCount > 0) return true;
+        }
+        return false;
+    }
+
+    /**
+     * Gets the number of the current line, counting from 1 and including blank lines.
+     *
+     * @return The line number.
+     */
+    public int lineNumber() {
+        return lineNumber;
+    }
+
+    /**
+     * Gets the number of fields on the current line.
+     *
+     * @return The number of fields.
+     */
+    public int fieldCount() {
+        return fieldCount;
+    }
+
+    /**
+     * Gets a field of the current line as a city name.
+     *
+     * @param field The field index.
+     * @return The name.
+     * @throws NoSuchElementException If the line has no such field.
+     */
+    public String name(int field) {
+        checkField(field);
+        return intern(fieldStarts[field], fieldEnds[field] - fieldStarts[field]);
+    }
+
+    /**
+     * Gets a field of the current line as an integer.
+     *
+     * @param field The field index.
+     * @return The integer.
+     * @throws NumberFormatException  If the field is not an integer.
+     * @throws NoSuchElementException If the line has no such field.
+     */
+    public int intField(int field) {
+        checkField(field);
+        int position = fieldStarts[field];
+        int end = fieldEnds[field];
+        boolean negative = line[position] == '-';
+        if (negative || line[position] == '+') position++;
+        if (position == end) throw new NumberFormatException("Line " + lineNumber + ": " + text(field));
+        long value = 0;
+        for (; position < end; position++) {
+            int digit = line[position] - '0';
+            if (digit < 0 || digit > 9) throw new NumberFormatException("Line " + lineNumber + ": " + text(field));
+            value = value * 10 + digit;
+            if (value > Integer.MAX_VALUE + 1L) throw new NumberFormatException("Line " + lineNumber + ": " + text(field));
+        }
+        value = negative ? -value : value;
+        if (value > Integer.MAX_VALUE) throw new NumberFormatException("Line " + lineNumber + ": " + text(field));
+        return (int) value;
+    }
+
+    /**
+     * Gets a field of the current line as a decimal number.
+     *
+     * @param field The field index.
+     * @return The number.
+     * @throws NumberFormatException  If the field is not a number.
+     * @throws NoSuchElementException If the line has no such field.
+     */
+    public double doubleField(int field) {
+        checkField(field);
+        return Double.parseDouble(text(field));
+    }
+
+    private void checkField(int field) {
+        if (field < 0 || field >= fieldCount) {
+            throw new NoSuchElementException("Line " + lineNumber + " has no field " + (field + 1));
+        }
+    }
+
+    private String text(int field) {
+        return new String(line, fieldStarts[field], fieldEnds[field] - fieldStarts[field], StandardCharsets.UTF_8);
+    }
+
+    private boolean readLine() throws IOException {
+        lineLength = 0;
+        lineNumber++;
+        boolean any = false;
+        while (true) {
+            if (bufferPosition == bufferLength) {
+                bufferLength = in.read(buffer);
+                bufferPosition = 0;
+                if (bufferLength <= 0) {
+                    bufferLength = 0;
+                    return any;
+                }
+            }
+            any = true;
+            byte b = buffer[bufferPosition++];
+            if (b == '\n') return true;
+            if (lineLength == line.length) line = Arrays.copyOf(line, line.length * 2);
+            line[lineLength++] = b;
+        }
+    }
+
+    private void splitFields() {
+        int position = 0;
+        // Skip a UTF-8 byte order mark at the start of the file
+        if (lineNumber == 1 && lineLength >= 3 && line[0] == (byte) 0xEF && line[1] == (byte) 0xBB && line[2] == (byte) 0xBF) {
+            position = 3;
+        }
+        fieldCount = 0;
+        while (position < lineLength) {
+            while (position < lineLength && isSpace(line[position])) position++;
+            if (position == lineLength) break;
+            if (fieldCount == MAX_FIELDS) {
+                throw new IllegalArgumentException("Line " + lineNumber + " has more than " + MAX_FIELDS + " fields");
+            }
+            fieldStarts[fieldCount] = position;
+            while (position < lineLength && !isSpace(line[position])) position++;
+            fieldEnds[fieldCount++] = position;
+        }
+    }
+
+    private static boolean isSpace(byte b) {
+        return b == ' ' || b == '\t' || b == '\r' || b == '\f' || b == 0x0B;
+    }
+
+    private String intern(int start, int length) {
+        int mask = names.length - 1;
+        int slot = hash(line, start, start + length) & mask;
+        while (nameBytes[slot] != null) {
+            if (Arrays.equals(nameBytes[slot], 0, nameBytes[slot].length, line, start, start + length)) {
+                return names[slot];
+            }
+            slot = (slot + 1) & mask;
+        }
+        String name = new String(line, start, length, StandardCharsets.UTF_8);
+        nameBytes[slot] = Arrays.copyOfRange(line, start, start + length);
+        names[slot] = name;
+        if (++nameCount * 2 > names.length) grow();
+        return name;
+    }
+
+    private void grow() {
+        byte[][] oldBytes = nameBytes;
+        String[] oldNames = names;
+        nameBytes = new byte[oldBytes.length * 2][];
+        names = new String[oldNames.length * 2];
+        int mask = names.length - 1;
+        for (int i = 0; i < oldBytes.length; i++) {
+            if (oldBytes[i] == null) continue;
+            int slot = hash(oldBytes[i], 0, oldBytes[i].length) & mask;
+            while (nameBytes[slot] != null) slot = (slot + 1) & mask;
+            nameBytes[slot] = oldBytes[i];
+            names[slot] = oldNames[i];
+        }
+    }
+
+    private static int hash(byte[] bytes, int start, int end) {
+        int hash = 0x811C9DC5;
+        for (int i = start; i < end; i++) {
+            hash = (hash ^ bytes[i]) * 0x01000193;
+        }
+        return hash;
+    }
+
+    @Override
+    public void close() throws IOException {
+        in.close();
+    }
+}
@@ -0,0 +1,460 @@
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.util.*;
+
+/**
+ * Compact, integer-indexed form of a road network.
+ * City names are interned to dense ids and the adjacency of every city is stored
+ * in CSR form (offsets/targets/weights/roadIds), sorted by distance and then road id.
+ * Costs other than the distance are packed into one array per road and one per
+ * adjacency slot, with the costs of a road next to each other.
+ */
+public class RoadGraph {
+    private final String[] cityNames;
+    private final Map<String, Integer> cityIds;
+
+    // Per road, in input order
+    private final int[] roadCity1;
+    private final int[] roadCity2;
+    private final int[] roadDistances;
+    private final int[] roadIdList;
+
+    // Per adjacency slot, grouped by city
+    private final int[] offsets;
+    private final int[] targets;
+    private final int[] weights;
+    private final int[] roadIds;
+    private final int[] roads;
+
+    // Road indexes sorted by distance and then by id
+    private final int[] roadOrder;
+
+    // Costs other than the distance: criterionCount - 1 values per road and per slot
+    private final int criterionCount;
+    private final int[] roadExtraWeights;
+    private final int[] extraWeights;
+
+    private GraphComponents components;
+
+    private RoadGraph(String[] cityNames, int[] roadCity1, int[] roadCity2, int[] roadDistances, int[] roadIdList,
+                      int[] offsets, int[] targets, int[] weights, int[] roadIds, int[] roads, int[] roadOrder,
+                      int criterionCount, int[] roadExtraWeights, int[] extraWeights) {
+        this.cityNames = cityNames;
+        this.cityIds = new HashMap<>(cityNames.length * 2);
+        for (int i = 0; i < cityNames.length; i++) {
+            cityIds.put(cityNames[i], i);
+        }
+        this.roadCity1 = roadCity1;
+        this.roadCity2 = roadCity2;
+        this.roadDistances = roadDistances;
+        this.roadIdList = roadIdList;
+        this.offsets = offsets;
+        this.targets = targets;
+        this.weights = weights;
+        this.roadIds = roadIds;
+        this.roads = roads;
+        this.roadOrder = roadOrder;
+        this.criterionCount = criterionCount;
+        this.roadExtraWeights = roadExtraWeights;
+        this.extraWeights = extraWeights;
+    }
+
+    /**
+     * Builds the compact graph of a road network.
+     *
+     * @param roadNetwork The road network.
+     * @return The compact graph.
+     */
+    public static RoadGraph build(RoadNetwork roadNetwork) {
+        List<Road> roadList = roadNetwork.getRoads();
+        Map<String, Integer> ids = new HashMap<>();
+        List<String> names = new ArrayList<>();
+        int[] city1 = new int[roadList.size()];
+        int[] city2 = new int[roadList.size()];
+        int[] distances = new int[roadList.size()];
+        int[] idList = new int[roadList.size()];
+        int criterionCount = 1;
+
+        for (int r = 0; r < roadList.size(); r++) {
+            Road road = roadList.get(r);
+            city1[r] = intern(road.getCity1(), ids, names);
+            city2[r] = intern(road.getCity2(), ids, names);
+            distances[r] = road.getDistance();
+            idList[r] = road.getId();
+            criterionCount = Math.max(criterionCount, 1 + road.getExtraWeights().length);
+        }
+        int stride = criterionCount - 1;
+        int[] roadExtraWeights = new int[roadList.size() * stride];
+        for (int r = 0; stride > 0 && r < roadList.size(); r++) {
+            int[] extra = roadList.get(r).getExtraWeights();
+            System.arraycopy(extra, 0, roadExtraWeights, r * stride, extra.length); // Missing costs are 0
+        }
+        return build(names.toArray(new String[0]), city1, city2, distances, idList, criterionCount, roadExtraWeights);
+    }
+
+    /**
+     * Builds the compact graph of roads given by city ids.
+     *
+     * @param cityNames     The city names, indexed by city id.
+     * @param roadCity1     The first city of each road.
+     * @param roadCity2     The second city of each road.
+     * @param roadDistances The distance of each road.
+     * @param roadIdList    The id of each road.
+     * @return The compact graph.
+     */
+    public static RoadGraph build(String[] cityNames, int[] roadCity1, int[] roadCity2, int[] roadDistances, int[] roadIdList) {
+        return build(cityNames, roadCity1, roadCity2, roadDistances, roadIdList, 1, new int[0]);
+    }
+
+    /**
+     * Builds the compact graph of roads given by city ids, with costs other than the distance.
+     *
+     * @param cityNames        The city names, indexed by city id.
+     * @param roadCity1        The first city of each road.
+     * @param roadCity2        The second city of each road.
+     * @param roadDistances    The distance of each road.
+     * @param roadIdList       The id of each road.
+     * @param criterionCount   The number of costs of every road, the distance included.
+     * @param roadExtraWeights The other costs, criterionCount - 1 values per road.
+     * @return The compact graph.
+     */
+    public static RoadGraph build(String[] cityNames, int[] roadCity1, int[] roadCity2, int[] roadDistances, int[] roadIdList,
+                                  int criterionCount, int[] roadExtraWeights) {
+        int cityCount = cityNames.length;
+        int roadCount = roadIdList.length;
+        int[] offsets = new int[cityCount + 1];
+        int[] targets = new int[2 * roadCount];
+        int[] weights = new int[2 * roadCount];
+        int[] roadIds = new int[2 * roadCount];
+        int[] roads = new int[2 * roadCount];
+        int stride = criterionCount - 1;
+        int[] extraWeights = new int[2 * roadCount * stride];
+
+        for (int r = 0; r < roadCount; r++) {
+            offsets[roadCity1[r] + 1]++;
+            offsets[roadCity2[r] + 1]++;
+        }
+        for (int c = 0; c < cityCount; c++) {
+            offsets[c + 1] += offsets[c];
+        }
+
+        // Filling the slots in (distance, id) order leaves every adjacency range sorted
+        int[] next = Arrays.copyOf(offsets, cityCount);
+        int[] roadOrder = sortedRoadOrder(roadDistances, roadIdList);
+        for (int r : roadOrder) {
+            for (int end = 0; end < 2; end++) {
+                int slot = end == 0 ? next[roadCity1[r]]++ : next[roadCity2[r]]++;
+                targets[slot] = end == 0 ? roadCity2[r] : roadCity1[r];
+                weights[slot] = roadDistances[r];
+                roadIds[slot] = roadIdList[r];
+                roads[slot] = r;
+                System.arraycopy(roadExtraWeights, r * stride, extraWeights, slot * stride, stride);
+            }
+        }
+        return new RoadGraph(cityNames, roadCity1, roadCity2, roadDistances, roadIdList,
+                offsets, targets, weights, roadIds, roads, roadOrder, criterionCount, roadExtraWeights, extraWeights);
+    }
+
+    private static int intern(String name, Map<String, Integer> ids, List<String> names) {
+        Integer id = ids.get(name);
+        if (id == null) {
+            id = names.size();
+            ids.put(name, id);
+            names.add(name);
+        }
+        return id;
+    }
+
+    /**
+     * Orders the road indexes by distance and then by road id, using two primitive sorts.
+     */
+    private static int[] sortedRoadOrder(int[] roadDistances, int[] roadIdList) {
+        int roadCount = roadIdList.length;
+        long[] keys = new long[roadCount];
+        for (int r = 0; r < roadCount; r++) {
+            keys[r] = pack(roadIdList[r], r);
+        }
+        Arrays.parallelSort(keys);
+        int[] byId = new int[roadCount];
+        for (int i = 0; i < roadCount; i++) {
+            byId[i] = (int) keys[i];
+            keys[i] = pack(roadDistances[byId[i]], i);
+        }
+        Arrays.parallelSort(keys);
+        int[] order = new int[roadCount];
+        for (int i = 0; i < roadCount; i++) {
+            order[i] = byId[(int) keys[i]];
+        }
+        return order;
+    }
+
+    private static long pack(int high, int low) {
+        return ((long) high << 32) | (low & 0xFFFFFFFFL);
+    }
+
+    /**
+     * Writes the graph to a channel, at its current position.
+     *
+     * @param channel The channel.
+     * @throws IOException If the channel cannot be written.
+     */
+    public void write(FileChannel channel) throws IOException {
+        GraphFile.writeStrings(channel, cityNames);
+        for (int[] array : new int[][]{roadCity1, roadCity2, roadDistances, roadIdList, offsets, targets, weights, roadIds, roads, roadOrder,
+                {criterionCount}, roadExtraWeights, extraWeights}) {
+            GraphFile.writeInts(channel, array);
+        }
+    }
+
+    /**
+     * Reads a graph written by write, by memory-mapping the channel from its current position.
+     *
+     * @param channel The channel.
+     * @return The compact graph.
+     * @throws IOException If the channel cannot be read.
+     */
+    public static RoadGraph read(FileChannel channel) throws IOException {
+        String[] cityNames = GraphFile.readStrings(channel);
+        int[][] arrays = new int[13][];
+        for (int i = 0; i < arrays.length; i++) {
+            arrays[i] = GraphFile.readInts(channel);
+        }
+        return new RoadGraph(cityNames, arrays[0], arrays[1], arrays[2], arrays[3],
+                arrays[4], arrays[5], arrays[6], arrays[7], arrays[8], arrays[9], arrays[10][0], arrays[11], arrays[12]);
+    }
+
+    /**
+     * Gets the connected components of the graph, found on first use.
+     * @return The components.
+     */
+    public synchronized GraphComponents components() {
+        if (components == null) {
+            components = GraphComponents.compute(this);
+        }
+        return components;
+    }
+
+    /**
+     * Gets the number of cities.
+     * @return The number of cities.
+     */
+    public int cityCount() {
+        return cityNames.length;
+    }
+
+    /**
+     * Gets the number of roads.
+     * @return The number of roads.
+     */
+    public int roadCount() {
+        return roadIdList.length;
+    }
+
+    /**
+     * Gets the id of a city.
+     * @param name The name of the city.
+     * @return The id of the city, or -1 if the city is not in the graph.
+     */
+    public int cityId(String name) {
+        Integer id = cityIds.get(name);
+        return id == null ? -1 : id;
+    }
+
+    /**
+     * Gets the name of a city.
+     * @param city The id of the city.
+     * @return The name of the city.
+     */
+    public String cityName(int city) {
+        return cityNames[city];
+    }
+
+    /**
+     * Gets the first adjacency slot of a city.
+     * @param city The id of the city.
+     * @return The first slot.
+     */
+    public int firstEdge(int city) {
+        return offsets[city];
+    }
+
+    /**
+     * Gets the adjacency slot just past the last one of a city.
+     * @param city The id of the city.
+     * @return The end slot (exclusive).
+     */
+    public int endEdge(int city) {
+        return offsets[city + 1];
+    }
+
+    /**
+     * Gets the city an adjacency slot leads to.
+     * @param edge The adjacency slot.
+     * @return The id of the neighbor city.
+     */
+    public int target(int edge) {
+        return targets[edge];
+    }
+
+    /**
+     * Gets the distance of the road in an adjacency slot.
+     * @param edge The adjacency slot.
+     * @return The distance.
+     */
+    public int weight(int edge) {
+        return weights[edge];
+    }
+
+    /**
+     * Gets a cost of the road in an adjacency slot.
+     * @param edge      The adjacency slot.
+     * @param criterion 0 for the distance, 1 and up for the other costs.
+     * @return The cost.
+     */
+    public int weight(int edge, int criterion) {
+        return criterion == 0 ? weights[edge] : extraWeights[edge * (criterionCount - 1) + criterion - 1];
+    }
+
+    /**
+     * Gets the number of costs of every road, the distance included.
+     * @return The number of costs.
+     */
+    public int criterionCount() {
+        return criterionCount;
+    }
+
+    /**
+     * Gets the id of the road in an adjacency slot.
+     * @param edge The adjacency slot.
+     * @return The road id.
+     */
+    public int roadId(int edge) {
+        return roadIds[edge];
+    }
+
+    /**
+     * Gets the index of the road in an adjacency slot.
+     * @param edge The adjacency slot.
+     * @return The road index, in input order.
+     */
+    public int road(int edge) {
+        return roads[edge];
+    }
+
+    /**
+     * Gets the road at a position of the (distance, id) order.
+     * @param position The position, from 0 to roadCount() - 1.
+     * @return The road index.
+     */
+    public int roadInOrder(int position) {
+        return roadOrder[position];
+    }
+
+    /**
+     * Gets the first city of a road.
+     * @param road The road index.
+     * @return The id of the first city.
+     */
+    public int roadCity1(int road) {
+        return roadCity1[road];
+    }
+
+    /**
+     * Gets the second city of a road.
+     * @param road The road index.
+     * @return The id of the second city.
+     */
+    public int roadCity2(int road) {
+        return roadCity2[road];
+    }
+
+    /**
+     * Gets the distance of a road.
+     * @param road The road index.
+     * @return The distance.
+     */
+    public int roadDistance(int road) {
+        return roadDistances[road];
+    }
+
+    /**
+     * Gets a cost of a road.
+     * @param road      The road index.
+     * @param criterion 0 for the distance, 1 and up for the other costs.
+     * @return The cost.
+     */
+    public int roadWeight(int road, int criterion) {
+        return criterion == 0 ? roadDistances[road] : roadExtraWeights[road * (criterionCount - 1) + criterion - 1];
+    }
+
+    /**
+     * Gets the id of a road.
+     * @param road The road index.
+     * @return The road id.
+     */
+    public int roadIdOf(int road) {
+        return roadIdList[road];
+    }
+
+    /**
+     * Creates the Road view of a road, for output.
+     * @param road The road index.
+     * @return The road object.
+     */
+    public Road toRoad(int road) {
+        return new Road(cityNames[roadCity1[road]], cityNames[roadCity2[road]], roadDistances[road], roadIdList[road], extraWeightsOf(road));
+    }
+
+    /**
+     * Computes a fingerprint of the cities and roads, used to tell if data saved for
+     * another graph still matches this one.
+     * @return The fingerprint.
+     */
+    public long fingerprint() {
+        long hash = 1125899906842597L;
+        for (String name : cityNames) {
+            hash = 31 * hash + name.hashCode();
+        }
+        for (int r = 0; r < roadIdList.length; r++) {
+            hash = 31 * hash + roadCity1[r];
+            hash = 31 * hash + roadCity2[r];
+            hash = 31 * hash + roadDistances[r];
+            hash = 31 * hash + roadIdList[r];
+        }
+        return hash;
+    }
+
+    /**
+     * Gets the city at the other end of a road.
+     * @param road The road index.
+     * @param city The id of one end of the road.
+     * @return The id of the other end.
+     */
+    public int otherCity(int road, int city) {
+        return roadCity1[road] == city ? roadCity2[road] : roadCity1[road];
+    }
+
+    /**
+     * Creates a RoadNetwork view of a list of roads, for output.
+     * @param roadIndexes The road indexes, in the order they should be listed.
+     * @return The road network.
+     */
+    public RoadNetwork toRoadNetwork(int[] roadIndexes) {
+        RoadNetwork roadNetwork = new RoadNetwork();
+        for (int road : roadIndexes) {
+            roadNetwork.addRoad(cityNames[roadCity1[road]], cityNames[roadCity2[road]], roadDistances[road], roadIdList[road], extraWeightsOf(road));
+        }
+        return roadNetwork;
+    }
+
+    /**
+     * Gets the costs of a road other than its distance.
+     * @param road The road index.
+     * @return A copy of the other costs, empty if the graph has none.
+     */
+    public int[] extraWeightsOf(int road) {
+        int stride = criterionCount - 1;
+        if (stride == 0) return Road.NO_EXTRA_WEIGHTS;
+        return Arrays.copyOfRange(roadExtraWeights, road * stride, (road + 1) * stride);
+    }
+}
@@ -6,12 +6,46 @@ import java.util.*;
 public class RoadNetwork {
     private final Map<String, City> cityMap;
     private final List<Road> roadList;
+    private final List<Road> roadView;
+    private final Map<String, double[]> coordinates;
     private String startCity;
     private String endCity;
+    private RoadGraph graph;
+    private int totalDistance;
+    private boolean roadsPending;
+    private boolean bulkLoading;
+    private boolean frozen;
+
+    // Changes made through the update methods since the version logStart
+    private final List<RoadUpdate> updates;
+    private long version;
+    private long logStart;
+    private Map<Integer, Road> roadsById;
+    private Map<Road, Integer> roadPositions;
+    private DynamicRoadGraph dynamicGraph;
 
     public RoadNetwork() {
         cityMap = new HashMap<>();
         roadList = new ArrayList<>();
+        roadView = Collections.unmodifiableList(roadList);
+        coordinates = new HashMap<>();
+        updates = new ArrayList<>();
+    }
+
+    /**
+     * Creates a frozen network backed by an already built graph. The City and Road objects
+     * are only created when they are first asked for.
+     *
+     * @param graph The compact graph.
+     */
+    public RoadNetwork(RoadGraph graph) {
+        this();
+        this.graph = graph;
+        this.roadsPending = graph.roadCount() > 0;
+        this.frozen = true;
+        for (int road = 0; road < graph.roadCount(); road++) {
+            totalDistance += graph.roadDistance(road);
+        }
     }
 
     /**
@@ -23,12 +57,279 @@ public class RoadNetwork {
      * @param id       The unique ID of the road.
      */
     public void addRoad(String city1, String city2, int distance, int id) {
-        cityMap.putIfAbsent(city1, new City(city1));
-        cityMap.putIfAbsent(city2, new City(city2));
-        Road road = new Road(city1, city2, distance, id);
-        cityMap.get(city1).addRoad(road);
-        cityMap.get(city2).addRoad(road);
+        addRoad(city1, city2, distance, id, Road.NO_EXTRA_WEIGHTS);
+    }
+
+    /**
+     * Adds a road between two cities, with costs other than its distance.
+     *
+     * @param city1        The first city.
+     * @param city2        The second city.
+     * @param distance     The distance of the road.
+     * @param id           The unique ID of the road.
+     * @param extraWeights The other costs of the road, such as travel time or toll.
+     */
+    public void addRoad(String city1, String city2, int distance, int id, int[] extraWeights) {
+        if (frozen) throw new IllegalStateException("The road network is frozen");
+        materializeRoads();
+        insertRoad(new Road(city1, city2, distance, id, extraWeights));
+        graph = null;
+        // Roads added while loading are not logged, so results computed before must be rebuilt
+        version++;
+        logStart = version;
+        updates.clear();
+        roadsById = null;
+        roadPositions = null;
+        dynamicGraph = null;
+    }
+
+    private void insertRoad(Road road) {
+        City first = cityMap.computeIfAbsent(road.getCity1(), City::new);
+        City second = cityMap.computeIfAbsent(road.getCity2(), City::new);
+        if (bulkLoading) {
+            first.appendRoad(road);
+            second.appendRoad(road);
+        } else {
+            first.addRoad(road);
+            second.addRoad(road);
+        }
         roadList.add(road);
+        totalDistance += road.getDistance();
+    }
+
+    /**
+     * Starts loading roads in bulk. Until finishBulkLoad is called, roads are appended
+     * to their cities without keeping the road lists sorted.
+     */
+    public void startBulkLoad() {
+        if (frozen) throw new IllegalStateException("The road network is frozen");
+        bulkLoading = true;
+    }
+
+    /**
+     * Finishes a bulk load: sorts the roads of every city once, in parallel, and freezes the
+     * network so no more roads can be added.
+     */
+    public void finishBulkLoad() {
+        if (frozen) return;
+        cityMap.values().parallelStream().forEach(city -> {
+            if (bulkLoading) city.sortRoads();
+            city.freeze();
+        });
+        bulkLoading = false;
+        frozen = true;
+    }
+
+    /**
+     * Opens a new road. Unlike addRoad, this also works on a frozen network and the change is
+     * logged, so results computed before can be repaired instead of recomputed.
+     *
+     * @param city1    The first city.
+     * @param city2    The second city.
+     * @param distance The distance of the road.
+     * @param id       The unique ID of the road.
+     * @throws IllegalArgumentException If a road with the same id already exists.
+     */
+    public synchronized void openRoad(String city1, String city2, int distance, int id) {
+        if (getRoad(id) != null) throw new IllegalArgumentException("Road " + id + " already exists");
+        applyUpdate(null, new Road(city1, city2, distance, id));
+    }
+
+    /**
+     * Closes a road.
+     *
+     * @param id The id of the road.
+     * @throws IllegalArgumentException If there is no road with the id.
+     */
+    public synchronized void closeRoad(int id) {
+        applyUpdate(existingRoad(id), null);
+    }
+
+    /**
+     * Changes the distance of a road.
+     *
+     * @param id       The id of the road.
+     * @param distance The new distance.
+     * @throws IllegalArgumentException If there is no road with the id.
+     */
+    public synchronized void setRoadDistance(int id, int distance) {
+        Road road = existingRoad(id);
+        applyUpdate(road, new Road(road.getCity1(), road.getCity2(), distance, id, road.getExtraWeights()));
+    }
+
+    /**
+     * Gets a road by its id.
+     *
+     * @param id The id of the road.
+     * @return The road, or null if there is no road with the id.
+     */
+    public synchronized Road getRoad(int id) {
+        if (roadsById == null) {
+            materializeRoads();
+            roadsById = new HashMap<>(roadList.size() * 2);
+            for (Road road : roadList) {
+                roadsById.put(road.getId(), road);
+            }
+        }
+        return roadsById.get(id);
+    }
+
+    private Road existingRoad(int id) {
+        Road road = getRoad(id);
+        if (road == null) throw new IllegalArgumentException("No road with id " + id);
+        return road;
+    }
+
+    /**
+     * Applies a change to the City and Road objects and patches the changeable graph, so a
+     * change costs the degree of its cities and not the size of the network.
+     */
+    private void applyUpdate(Road removedRoad, Road addedRoad) {
+        if (bulkLoading) throw new IllegalStateException("Roads cannot be updated during a bulk load");
+        DynamicRoadGraph dynamic = getDynamicGraph();
+        if (roadPositions == null) {
+            roadPositions = new IdentityHashMap<>(roadList.size() * 2);
+            for (int i = 0; i < roadList.size(); i++) {
+                roadPositions.put(roadList.get(i), i);
+            }
+        }
+        int removedIndex = -1;
+        int addedIndex = -1;
+        if (removedRoad != null) {
+            cityMap.get(removedRoad.getCity1()).removeRoad(removedRoad);
+            cityMap.get(removedRoad.getCity2()).removeRoad(removedRoad);
+            // Move the last road into the place of the removed one
+            int position = roadPositions.remove(removedRoad);
+            Road last = roadList.remove(roadList.size() - 1);
+            if (last != removedRoad) {
+                roadList.set(position, last);
+                roadPositions.put(last, position);
+            }
+            totalDistance -= removedRoad.getDistance();
+            roadsById.remove(removedRoad.getId());
+            removedIndex = dynamic.closeRoad(removedRoad.getId());
+        }
+        if (addedRoad != null) {
+            for (String name : new String[]{addedRoad.getCity1(), addedRoad.getCity2()}) {
+                City city = cityMap.computeIfAbsent(name, City::new);
+                if (frozen) city.freeze();
+                city.addRoad(addedRoad);
+            }
+            roadPositions.put(addedRoad, roadList.size());
+            roadList.add(addedRoad);
+            totalDistance += addedRoad.getDistance();
+            roadsById.put(addedRoad.getId(), addedRoad);
+            addedIndex = dynamic.openRoad(addedRoad);
+        }
+        updates.add(new RoadUpdate(removedRoad, addedRoad, removedIndex, addedIndex));
+        version++;
+        graph = null;
+        if (dynamic.closedCount() > dynamic.roadCount() / 2) {
+            // More closed roads than open ones: start again from a compact graph. Results
+            // computed before hold indexes of the old graph, so they must be rebuilt.
+            dynamicGraph = null;
+            logStart = version;
+            updates.clear();
+        }
+    }
+
+    /**
+     * Gets the changeable graph of the network, which openRoad, closeRoad and setRoadDistance
+     * patch in place. The road indexes in the updates returned by getUpdatesSince are indexes
+     * of this graph. Callers must hold the lock of the network while they use it.
+     *
+     * @return The changeable graph.
+     */
+    public synchronized DynamicRoadGraph getDynamicGraph() {
+        if (dynamicGraph == null) {
+            dynamicGraph = new DynamicRoadGraph(getGraph());
+        }
+        return dynamicGraph;
+    }
+
+    /**
+     * Gets the version of the network, which grows with every change.
+     *
+     * @return The version.
+     */
+    public synchronized long getVersion() {
+        return version;
+    }
+
+    /**
+     * Gets the changes made through openRoad, closeRoad and setRoadDistance after a version.
+     *
+     * @param since The version a result was computed for.
+     * @return The changes in the order they were made, or null if the network was changed in
+     * another way since then and the result must be recomputed.
+     */
+    public synchronized List<RoadUpdate> getUpdatesSince(long since) {
+        if (since < logStart || since > version) return null;
+        return new ArrayList<>(updates.subList((int) (since - logStart), updates.size()));
+    }
+
+    /**
+     * Checks if the network is frozen.
+     * @return true if no more roads can be added, false otherwise.
+     */
+    public boolean isFrozen() {
+        return frozen;
+    }
+
+    /**
+     * Creates the City and Road objects of a network that was backed by a graph,
+     * as one bulk load.
+     */
+    private synchronized void materializeRoads() {
+        if (!roadsPending) return;
+        roadsPending = false;
+        frozen = false;
+        totalDistance = 0;
+        startBulkLoad();
+        for (int road = 0; road < graph.roadCount(); road++) {
+            insertRoad(graph.toRoad(road));
+        }
+        finishBulkLoad();
+    }
+
+    /**
+     * Gets the compact, integer-indexed graph of the network.
+     * The graph is built on first use, and built again on the next use after the network
+     * changes. Code that follows the changes should use getDynamicGraph instead.
+     * @return The compact graph.
+     */
+    public synchronized RoadGraph getGraph() {
+        if (graph == null) {
+            graph = RoadGraph.build(this);
+        }
+        return graph;
+    }
+
+    /**
+     * Gets the total distance of the roads, kept up to date as roads are added and changed.
+     * @return The total distance.
+     */
+    public int getTotalDistance() {
+        return totalDistance;
+    }
+
+    /**
+     * Sets the position of a city, used as a lower bound of route lengths.
+     * @param city The name of the city.
+     * @param x    The first coordinate (x, or latitude).
+     * @param y    The second coordinate (y, or longitude).
+     */
+    public void setCoordinates(String city, double x, double y) {
+        coordinates.put(city, new double[]{x, y});
+    }
+
+    /**
+     * Gets the position of a city.
+     * @param city The name of the city.
+     * @return The coordinates as {x, y}, or null if the city has none.
+     */
+    public double[] getCoordinates(String city) {
+        return coordinates.get(city);
     }
 
     /**
@@ -37,6 +338,7 @@ public class RoadNetwork {
      * @return The city object.
      */
     public City getCity(String name) {
+        materializeRoads();
         return cityMap.get(name);
     }
 
@@ -45,15 +347,18 @@ public class RoadNetwork {
      * @return A collection of cities.
      */
     public Collection<City> getCities() {
+        materializeRoads();
         return cityMap.values();
     }
 
     /**
-     * Gets all the roads in the network.
+     * Gets all the roads in the network. The roads are in the order they were added,
+     * except that closing a road moves the last road into its place.
      * @return A list of roads.
      */
     public List<Road> getRoads() {
-        return roadList;
+        materializeRoads();
+        return frozen ? roadView : roadList;
     }
 
     /**
@@ -0,0 +1,53 @@
+/**
+ * Represents a change made to a road network: a road removed, a road added,
+ * or both when the distance of a road changes.
+ */
+public class RoadUpdate {
+    private final Road removedRoad;
+    private final Road addedRoad;
+    private final int removedIndex;
+    private final int addedIndex;
+
+    public RoadUpdate(Road removedRoad, Road addedRoad, int removedIndex, int addedIndex) {
+        this.removedRoad = removedRoad;
+        this.addedRoad = addedRoad;
+        this.removedIndex = removedIndex;
+        this.addedIndex = addedIndex;
+    }
+
+    /**
+     * Gets the road that was removed.
+     *
+     * @return The removed road, or null if no road was removed.
+     */
+    public Road getRemovedRoad() {
+        return removedRoad;
+    }
+
+    /**
+     * Gets the road that was added.
+     *
+     * @return The added road, or null if no road was added.
+     */
+    public Road getAddedRoad() {
+        return addedRoad;
+    }
+
+    /**
+     * Gets the index of the removed road in the changeable graph of the network.
+     *
+     * @return The road index, or -1 if no road was removed.
+     */
+    public int getRemovedIndex() {
+        return removedIndex;
+    }
+
+    /**
+     * Gets the index of the added road in the changeable graph of the network.
+     *
+     * @return The road index, or -1 if no road was added.
+     */
+    public int getAddedIndex() {
+        return addedIndex;
+    }
+}
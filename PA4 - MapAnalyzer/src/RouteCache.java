@@ -0,0 +1,128 @@
+import java.util.*;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Keeps the most recently used routes of another route finder. The cached routes are dropped
+ * when the version of the road network changes, so a route is never older than the network.
+ */
+public class RouteCache implements RouteFinder {
+    private final RouteFinder routeFinder;
+    private final RoadNetwork roadNetwork;
+    private final int capacity;
+    private final LinkedHashMap<String, RoadNetwork> routes;
+    private long cachedVersion;
+    private final ThreadLocal<int[]> settledCounts = ThreadLocal.withInitial(() -> new int[1]);
+
+    private final AtomicLong hitCount = new AtomicLong();
+    private final AtomicLong missCount = new AtomicLong();
+    private final AtomicLong evictionCount = new AtomicLong();
+
+    /**
+     * Creates a cache in front of a route finder.
+     *
+     * @param routeFinder The route finder that computes the routes that are not cached.
+     * @param roadNetwork The road network the routes are found on.
+     * @param capacity    The maximum number of routes kept.
+     */
+    public RouteCache(RouteFinder routeFinder, RoadNetwork roadNetwork, int capacity) {
+        this.routeFinder = routeFinder;
+        this.roadNetwork = roadNetwork;
+        this.capacity = capacity;
+        this.cachedVersion = roadNetwork.getVersion();
+        this.routes = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, RoadNetwork> eldest) {
+                if (size() <= RouteCache.this.capacity) return false;
+                evictionCount.incrementAndGet();
+                return true;
+            }
+        };
+    }
+
+    /**
+     * Finds the fastest route between two cities, from the cache if it is there.
+     * The returned route is frozen, since it may be shared with other callers.
+     *
+     * @param startCity The starting city.
+     * @param endCity   The ending city.
+     * @return A RoadNetwork representing the fastest route.
+     */
+    @Override
+    public RoadNetwork findFastestRoute(String startCity, String endCity) {
+        String key = startCity + '\0' + endCity;
+        long version = roadNetwork.getVersion();
+        synchronized (routes) {
+            if (version != cachedVersion) {
+                routes.clear();
+                cachedVersion = version;
+            }
+            RoadNetwork route = routes.get(key);
+            if (route != null) {
+                hitCount.incrementAndGet();
+                settledCounts.get()[0] = 0;
+                return route;
+            }
+        }
+        missCount.incrementAndGet();
+        // Searched without holding the lock, so misses on several threads run in parallel
+        RoadNetwork route = routeFinder.findFastestRoute(startCity, endCity);
+        settledCounts.get()[0] = routeFinder.getSettledCount();
+        route.finishBulkLoad();
+        synchronized (routes) {
+            if (version == cachedVersion) routes.put(key, route);
+        }
+        return route;
+    }
+
+    /**
+     * Gets the number of cities settled by the last search of the calling thread, 0 if the route was cached.
+     *
+     * @return The number of settled cities.
+     */
+    @Override
+    public int getSettledCount() {
+        return settledCounts.get()[0];
+    }
+
+    /**
+     * Gets the number of routes found in the cache.
+     * @return The number of hits.
+     */
+    public long getHitCount() {
+        return hitCount.get();
+    }
+
+    /**
+     * Gets the number of routes that had to be searched.
+     * @return The number of misses.
+     */
+    public long getMissCount() {
+        return missCount.get();
+    }
+
+    /**
+     * Gets the number of routes dropped to make room for newer ones.
+     * @return The number of evictions.
+     */
+    public long getEvictionCount() {
+        return evictionCount.get();
+    }
+
+    /**
+     * Gets the number of routes in the cache.
+     * @return The number of cached routes.
+     */
+    public int size() {
+        synchronized (routes) {
+            return routes.size();
+        }
+    }
+
+    /**
+     * Gets the maximum number of routes kept.
+     * @return The capacity.
+     */
+    public int getCapacity() {
+        return capacity;
+    }
+}
@@ -0,0 +1,21 @@
+/**
+ * A search engine that answers fastest route queries on a road network.
+ */
+public interface RouteFinder {
+
+    /**
+     * Finds the fastest route between the start city and the end city.
+     *
+     * @param startCity The starting city.
+     * @param endCity   The ending city.
+     * @return A RoadNetwork representing the fastest route, empty if there is none.
+     */
+    RoadNetwork findFastestRoute(String startCity, String endCity);
+
+    /**
+     * Gets the number of cities settled by the last search.
+     *
+     * @return The number of settled cities.
+     */
+    int getSettledCount();
+}
@@ -0,0 +1,33 @@
+/**
+ * A distance between two city positions, used by AStarPathFinder as a lower bound of route lengths.
+ * Implementations must satisfy the triangle inequality.
+ */
+public interface RouteHeuristic {
+
+    /**
+     * Straight-line distance between two points.
+     */
+    RouteHeuristic EUCLIDEAN = (x1, y1, x2, y2) -> Math.hypot(x1 - x2, y1 - y2);
+
+    /**
+     * Great-circle distance in kilometers between two points given as latitude and longitude in degrees.
+     */
+    RouteHeuristic GREAT_CIRCLE = (lat1, lon1, lat2, lon2) -> {
+        double dLat = Math.toRadians(lat2 - lat1);
+        double dLon = Math.toRadians(lon2 - lon1);
+        double a = Math.pow(Math.sin(dLat / 2), 2)
+                + Math.cos(Math.toRadians(lat1)) * Math.cos(Math.toRadians(lat2)) * Math.pow(Math.sin(dLon / 2), 2);
+        return 2 * 6371.0 * Math.asin(Math.min(1, Math.sqrt(a)));
+    };
+
+    /**
+     * Gets the distance between two points.
+     *
+     * @param x1 The first coordinate of the first point.
+     * @param y1 The second coordinate of the first point.
+     * @param x2 The first coordinate of the second point.
+     * @param y2 The second coordinate of the second point.
+     * @return The distance.
+     */
+    double distance(double x1, double y1, double x2, double y2);
+}
@@ -0,0 +1,147 @@
+import java.util.*;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Work counters of the searches and wall times of the phases of a run. Every phase has its
+ * own counters and time. Searches count in local variables and add their totals once at the
+ * end, so the counters may be shared by searches running on several threads.
+ */
+public class SearchMetrics {
+    private final LongAdder searches = new LongAdder();
+    private final LongAdder settledCities = new LongAdder();
+    private final LongAdder relaxedEdges = new LongAdder();
+    private final LongAdder heapPushes = new LongAdder();
+    private final LongAdder heapPops = new LongAdder();
+    private final LongAdder stalePops = new LongAdder();
+    private final AtomicLong peakHeapSize = new AtomicLong();
+    private final AtomicLong nanos = new AtomicLong();
+    private final Map<String, SearchMetrics> phases = new LinkedHashMap<>();
+
+    /**
+     * Gets the metrics of a phase, creating them on first use.
+     *
+     * @param phase The phase name.
+     * @return The metrics of the phase.
+     */
+    public synchronized SearchMetrics phase(String phase) {
+        return phases.computeIfAbsent(phase, name -> new SearchMetrics());
+    }
+
+    /**
+     * Adds the work of one search.
+     *
+     * @param settled  The number of cities settled.
+     * @param relaxed  The number of edges looked at from settled cities.
+     * @param pushes   The number of heap insertions and key decreases.
+     * @param pops     The number of heap removals, stale ones included.
+     * @param stale    The number of removed entries that were skipped as out of date.
+     * @param peakHeap The largest heap size reached.
+     */
+    public void recordSearch(long settled, long relaxed, long pushes, long pops, long stale, long peakHeap) {
+        searches.increment();
+        settledCities.add(settled);
+        relaxedEdges.add(relaxed);
+        heapPushes.add(pushes);
+        heapPops.add(pops);
+        stalePops.add(stale);
+        peakHeapSize.accumulateAndGet(peakHeap, Math::max);
+    }
+
+    /**
+     * Adds wall time to a phase.
+     *
+     * @param phase     The phase name.
+     * @param startTime The System.nanoTime() value at the start of the phase.
+     */
+    public void recordPhase(String phase, long startTime) {
+        phase(phase).nanos.addAndGet(System.nanoTime() - startTime);
+    }
+
+    /**
+     * Gets the number of searches recorded.
+     * @return The number of searches.
+     */
+    public long getSearchCount() {
+        return searches.sum();
+    }
+
+    /**
+     * Gets the number of cities settled by all searches.
+     * @return The number of settled cities.
+     */
+    public long getSettledCount() {
+        return settledCities.sum();
+    }
+
+    /**
+     * Gets the number of edges looked at by all searches.
+     * @return The number of relaxed edges.
+     */
+    public long getRelaxedCount() {
+        return relaxedEdges.sum();
+    }
+
+    /**
+     * Gets the number of heap insertions and key decreases.
+     * @return The number of pushes.
+     */
+    public long getPushCount() {
+        return heapPushes.sum();
+    }
+
+    /**
+     * Gets the number of heap removals, stale ones included.
+     * @return The number of pops.
+     */
+    public long getPopCount() {
+        return heapPops.sum();
+    }
+
+    /**
+     * Gets the number of removed heap entries that were out of date.
+     * @return The number of stale pops.
+     */
+    public long getStalePopCount() {
+        return stalePops.sum();
+    }
+
+    /**
+     * Gets the largest heap size reached by any search.
+     * @return The peak heap size.
+     */
+    public long getPeakHeapSize() {
+        return peakHeapSize.get();
+    }
+
+    /**
+     * Formats the time and counters of every phase as one line of JSON, with times in milliseconds.
+     * Counters are left out for phases that ran no search.
+     *
+     * @return The summary.
+     */
+    public synchronized String toJson() {
+        StringBuilder json = new StringBuilder("{");
+        String separator = "";
+        for (Map.Entry<String, SearchMetrics> phase : phases.entrySet()) {
+            json.append(separator).append('"').append(phase.getKey()).append("\":");
+            phase.getValue().appendCounters(json);
+            separator = ",";
+        }
+        return json.append('}').toString();
+    }
+
+    private void appendCounters(StringBuilder json) {
+        json.append("{\"ms\":").append(String.format(Locale.US, "%.3f", nanos.get() / 1e6));
+        if (getSearchCount() > 0) {
+            json.append(",\"searches\":").append(getSearchCount())
+                    .append(",\"settled_cities\":").append(getSettledCount())
+                    .append(",\"relaxed_edges\":").append(getRelaxedCount())
+                    .append(",\"heap_pushes\":").append(getPushCount())
+                    .append(",\"heap_pops\":").append(getPopCount())
+                    .append(",\"stale_pops\":").append(getStalePopCount())
+                    .append(",\"peak_heap_size\":").append(getPeakHeapSize());
+        }
+        json.append('}');
+    }
+}
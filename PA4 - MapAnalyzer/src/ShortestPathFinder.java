@@ -2,12 +2,56 @@ import java.util.*;
 
 /**
  * Finds the shortest path between cities in the road network.
+ * Routes are the shortest by distance unless another cost of the roads is selected.
  */
-public class ShortestPathFinder {
+public class ShortestPathFinder implements RouteFinder {
     private final RoadNetwork roadNetwork;
+    private final int criterion;
+    // The number of cities settled by the last search of every thread
+    private final ThreadLocal<int[]> settledCounts = ThreadLocal.withInitial(() -> new int[1]);
+    private SearchMetrics metrics;
+
+    // Shortest path tree kept by findFastestRouteIncremental, over the changeable graph
+    private DynamicRoadGraph treeGraph;
+    private int treeStart = -1;
+    private long treeVersion;
+    private int[] treeDistances = new int[0];
+    private int[] treeRoads = new int[0];
+    private IndexedMinHeap treeQueue = new IndexedMinHeap(0);
+    private int[] detachedCities = new int[0];
 
     public ShortestPathFinder(RoadNetwork roadNetwork) {
+        this(roadNetwork, 0);
+    }
+
+    /**
+     * Creates a finder that minimizes one of the costs of the roads.
+     *
+     * @param roadNetwork The road network.
+     * @param criterion   0 for the distance, 1 and up for the other costs in the input.
+     */
+    public ShortestPathFinder(RoadNetwork roadNetwork, int criterion) {
         this.roadNetwork = roadNetwork;
+        this.criterion = criterion;
+    }
+
+    /**
+     * Sets the counters that findFastestRoute and findFastestRouteBidirectional add their work to.
+     *
+     * @param metrics The counters, or null to stop counting.
+     */
+    public void setMetrics(SearchMetrics metrics) {
+        this.metrics = metrics;
+    }
+
+    /**
+     * Gets the number of cities settled by the last search of the calling thread.
+     *
+     * @return The number of settled cities.
+     */
+    @Override
+    public int getSettledCount() {
+        return settledCounts.get()[0];
     }
 
     /**
@@ -17,50 +61,387 @@ public class ShortestPathFinder {
      * @param endCity   The ending city.
      * @return A RoadNetwork representing the fastest route.
      */
+    @Override
     public RoadNetwork findFastestRoute(String startCity, String endCity) {
-        PriorityQueue<Road> priorityQueue = new PriorityQueue<>(
-                Comparator.comparingInt(Road::getDistance)
-                        .thenComparingInt(Road::getId)
-        );
-        Map<String, Integer> distances = new HashMap<>();
-        Map<String, List<Road>> previousRoads = new HashMap<>();
-        Set<String> visitedCities = new HashSet<>();
+        RoadGraph graph = roadNetwork.getGraph();
+        settledCounts.get()[0] = 0;
+        int start = graph.cityId(startCity);
+        int end = graph.cityId(endCity);
+        if (start < 0 || end < 0) {
+            recordEmptySearch();
+            return new RoadNetwork();
+        }
+        return graph.toRoadNetwork(findRoute(start, end));
+    }
 
-        for (String city : roadNetwork.getCities().stream().map(City::getName).toArray(String[]::new)) {
-            distances.put(city, Integer.MAX_VALUE);
-            previousRoads.put(city, new ArrayList<>());
+    /**
+     * Finds the fastest route between two cities of the graph.
+     *
+     * @param start The id of the starting city.
+     * @param end   The id of the ending city.
+     * @return The road indexes of the route, empty if there is none.
+     */
+    public int[] findRoute(int start, int end) {
+        RoadGraph graph = roadNetwork.getGraph();
+        int[] settledCount = settledCounts.get();
+        settledCount[0] = 0;
+        if (!graph.components().connected(start, end)) {
+            recordEmptySearch();
+            return new int[0];
         }
-        distances.put(startCity, 0);
+        int cityCount = graph.cityCount();
+        IndexedMinHeap priorityQueue = new IndexedMinHeap(cityCount);
+        int[] distances = new int[cityCount];
+        int[] previousRoads = new int[cityCount]; // Road index used to reach each city
+        boolean[] visitedCities = new boolean[cityCount];
+
+        Arrays.fill(distances, Integer.MAX_VALUE);
+        Arrays.fill(previousRoads, -1);
+        distances[start] = 0;
 
-        priorityQueue.add(new Road(startCity, startCity, 0, -1)); // Dummy road to start with
+        priorityQueue.push(start, IndexedMinHeap.key(0, -1)); // Dummy road to start with
+        long popCount = 0;
+        long relaxedCount = 0;
+        long pushCount = 1;
+        int peakHeapSize = 1;
 
         while (!priorityQueue.isEmpty()) {
-            Road currentRoad = priorityQueue.poll();
-            String currentCity = currentRoad.getCity2();
-            if (!visitedCities.add(currentCity)) continue;
-
-            City city = roadNetwork.getCity(currentCity);
-            for (Road road : city.getRoads()) {
-                String neighborCity = road.getCity1().equals(currentCity) ? road.getCity2() : road.getCity1();
-                if (!visitedCities.contains(neighborCity)) {
-                    int newDistance = distances.get(currentCity) + road.getDistance();
-
-                    if (newDistance < distances.get(neighborCity)) {
-                        distances.put(neighborCity, newDistance);
-                        List<Road> newPath = new ArrayList<>(previousRoads.get(currentCity));
-                        newPath.add(road);
-                        previousRoads.put(neighborCity, newPath);
-                        priorityQueue.add(new Road(currentCity, neighborCity, newDistance, road.getId()));
+            int currentCity = priorityQueue.poll();
+            visitedCities[currentCity] = true;
+            settledCount[0]++;
+            popCount++;
+            if (currentCity == end) break; // The route to the end city can no longer change
+
+            for (int edge = graph.firstEdge(currentCity); edge < graph.endEdge(currentCity); edge++) {
+                int neighborCity = graph.target(edge);
+                relaxedCount++;
+                if (!visitedCities[neighborCity]) {
+                    int newDistance = distances[currentCity] + graph.weight(edge, criterion);
+
+                    if (newDistance < distances[neighborCity]) {
+                        distances[neighborCity] = newDistance;
+                        previousRoads[neighborCity] = graph.road(edge);
+                        priorityQueue.push(neighborCity, IndexedMinHeap.key(newDistance, graph.roadId(edge)));
+                        pushCount++;
+                        peakHeapSize = Math.max(peakHeapSize, priorityQueue.size());
                     }
                 }
             }
         }
+        // The heap lowers keys in place, so no popped entry is ever stale
+        if (metrics != null) metrics.recordSearch(popCount, relaxedCount, pushCount, popCount, 0, peakHeapSize);
+
+        return tracePath(graph, previousRoads, end);
+    }
 
-        RoadNetwork fastestRouteNetwork = new RoadNetwork();
-        List<Road> path = previousRoads.get(endCity);
-        for (Road road : path) {
-            fastestRouteNetwork.addRoad(road.getCity1(), road.getCity2(), road.getDistance(), road.getId());
+    /**
+     * Finds the fastest route by searching forward from the start city and backward from the end city
+     * at the same time. The route has the same length as the one of findFastestRoute, but when several
+     * fastest routes exist a different one may be returned.
+     *
+     * @param startCity The starting city.
+     * @param endCity   The ending city.
+     * @return A RoadNetwork representing the fastest route.
+     */
+    public RoadNetwork findFastestRouteBidirectional(String startCity, String endCity) {
+        RoadGraph graph = roadNetwork.getGraph();
+        int[] settledCount = settledCounts.get();
+        settledCount[0] = 0;
+        int start = graph.cityId(startCity);
+        int end = graph.cityId(endCity);
+        if (start < 0 || end < 0 || !graph.components().connected(start, end)) {
+            recordEmptySearch();
+            return new RoadNetwork();
+        }
+
+        int cityCount = graph.cityCount();
+        IndexedMinHeap[] queues = {new IndexedMinHeap(cityCount), new IndexedMinHeap(cityCount)};
+        int[][] distances = {new int[cityCount], new int[cityCount]};
+        int[][] previousRoads = {new int[cityCount], new int[cityCount]};
+        boolean[][] visitedCities = {new boolean[cityCount], new boolean[cityCount]};
+        for (int side = 0; side < 2; side++) {
+            Arrays.fill(distances[side], Integer.MAX_VALUE);
+            Arrays.fill(previousRoads[side], -1);
+        }
+        distances[0][start] = 0;
+        distances[1][end] = 0;
+        queues[0].push(start, IndexedMinHeap.key(0, -1));
+        queues[1].push(end, IndexedMinHeap.key(0, -1));
+        long popCount = 0;
+        long relaxedCount = 0;
+        long pushCount = 2;
+        int peakHeapSize = 2;
+
+        long bestDistance = start == end ? 0 : Long.MAX_VALUE;
+        int meetingCity = start == end ? start : -1;
+
+        while (!queues[0].isEmpty() && !queues[1].isEmpty()) {
+            long forwardTop = IndexedMinHeap.distance(queues[0].peekKey());
+            long backwardTop = IndexedMinHeap.distance(queues[1].peekKey());
+            // No route through an unsettled city can be shorter than the best one found
+            if (forwardTop + backwardTop >= bestDistance) break;
+
+            int side = forwardTop <= backwardTop ? 0 : 1;
+            int[] ownDistances = distances[side];
+            int[] otherDistances = distances[1 - side];
+            int currentCity = queues[side].poll();
+            visitedCities[side][currentCity] = true;
+            settledCount[0]++;
+            popCount++;
+
+            for (int edge = graph.firstEdge(currentCity); edge < graph.endEdge(currentCity); edge++) {
+                int neighborCity = graph.target(edge);
+                relaxedCount++;
+                if (visitedCities[side][neighborCity]) continue;
+                int newDistance = ownDistances[currentCity] + graph.weight(edge, criterion);
+
+                if (newDistance < ownDistances[neighborCity]) {
+                    ownDistances[neighborCity] = newDistance;
+                    previousRoads[side][neighborCity] = graph.road(edge);
+                    queues[side].push(neighborCity, IndexedMinHeap.key(newDistance, graph.roadId(edge)));
+                    pushCount++;
+                    peakHeapSize = Math.max(peakHeapSize, queues[0].size() + queues[1].size());
+                    if (otherDistances[neighborCity] != Integer.MAX_VALUE
+                            && (long) newDistance + otherDistances[neighborCity] < bestDistance) {
+                        bestDistance = (long) newDistance + otherDistances[neighborCity];
+                        meetingCity = neighborCity;
+                    }
+                }
+            }
+        }
+        if (metrics != null) metrics.recordSearch(popCount, relaxedCount, pushCount, popCount, 0, peakHeapSize);
+        if (meetingCity < 0) return new RoadNetwork();
+
+        int[] forwardPath = tracePath(graph, previousRoads[0], meetingCity);
+        int[] backwardPath = tracePath(graph, previousRoads[1], meetingCity);
+        int[] path = Arrays.copyOf(forwardPath, forwardPath.length + backwardPath.length);
+        for (int i = 0; i < backwardPath.length; i++) {
+            path[forwardPath.length + i] = backwardPath[backwardPath.length - 1 - i];
+        }
+        return graph.toRoadNetwork(path);
+    }
+
+    /**
+     * Counts a search that was answered without settling any city, because one of the cities
+     * is unknown or the cities are in different components.
+     */
+    private void recordEmptySearch() {
+        if (metrics != null) metrics.recordSearch(0, 0, 0, 0, 0, 0);
+    }
+
+    /**
+     * Finds the fastest route like findFastestRoute, but keeps the shortest path tree of the
+     * start city between calls. When the network was only changed through openRoad, closeRoad
+     * and setRoadDistance since the last call, the tree is repaired around the changed roads
+     * instead of being computed again. The route has the same length as the one of
+     * findFastestRoute, but when several fastest routes exist a different one may be returned.
+     *
+     * @param startCity The starting city.
+     * @param endCity   The ending city.
+     * @return A RoadNetwork representing the fastest route.
+     */
+    public synchronized RoadNetwork findFastestRouteIncremental(String startCity, String endCity) {
+        settledCounts.get()[0] = 0;
+        synchronized (roadNetwork) {
+            DynamicRoadGraph graph = roadNetwork.getDynamicGraph();
+            int start = graph.cityId(startCity);
+            List<RoadUpdate> updates = graph == treeGraph && start == treeStart && start >= 0
+                    ? roadNetwork.getUpdatesSince(treeVersion) : null;
+            treeVersion = roadNetwork.getVersion();
+            if (start < 0) {
+                treeGraph = null;
+                return new RoadNetwork();
+            }
+            ensureTreeCapacity(graph.cityCount());
+            if (updates == null) {
+                buildTree(graph, start);
+            } else if (!updates.isEmpty()) {
+                repairTree(updates);
+            }
+
+            int end = graph.cityId(endCity);
+            int length = 0;
+            for (int city = end; city >= 0 && treeRoads[city] >= 0; city = graph.otherCity(treeRoads[city], city)) {
+                length++;
+            }
+            int[] path = new int[length];
+            for (int city = end, i = length - 1; i >= 0; city = graph.otherCity(treeRoads[city], city), i--) {
+                path[i] = treeRoads[city];
+            }
+            RoadNetwork route = new RoadNetwork();
+            for (int road : path) {
+                Road view = graph.toRoad(road);
+                route.addRoad(view.getCity1(), view.getCity2(), view.getDistance(), view.getId(), view.getExtraWeights());
+            }
+            return route;
+        }
+    }
+
+    /**
+     * Makes the tree arrays large enough for the cities that were added to the graph.
+     */
+    private void ensureTreeCapacity(int cityCount) {
+        int oldCount = treeDistances.length;
+        if (cityCount <= oldCount) return;
+        int capacity = Math.max(cityCount, oldCount + (oldCount >> 1));
+        treeDistances = Arrays.copyOf(treeDistances, capacity);
+        treeRoads = Arrays.copyOf(treeRoads, capacity);
+        Arrays.fill(treeDistances, oldCount, capacity, Integer.MAX_VALUE);
+        Arrays.fill(treeRoads, oldCount, capacity, -1);
+        treeQueue = new IndexedMinHeap(capacity);
+        detachedCities = new int[capacity];
+    }
+
+    private void buildTree(DynamicRoadGraph graph, int start) {
+        treeGraph = graph;
+        treeStart = start;
+        Arrays.fill(treeDistances, Integer.MAX_VALUE);
+        Arrays.fill(treeRoads, -1);
+        treeQueue.clear();
+        treeDistances[start] = 0;
+        treeQueue.push(start, IndexedMinHeap.key(0, 0));
+        growTree();
+    }
+
+    /**
+     * Repairs the shortest path tree after roads were changed. Cities whose tree route used a
+     * removed road lose their distance and are reached again from the cities around them, and
+     * the ends of added roads are relaxed; then only the cities whose distance drops are settled.
+     */
+    private void repairTree(List<RoadUpdate> updates) {
+        DynamicRoadGraph graph = treeGraph;
+        int detachedCount = 0;
+        for (RoadUpdate update : updates) {
+            int removedRoad = update.getRemovedIndex();
+            if (removedRoad < 0) continue;
+            int city1 = graph.roadCity1(removedRoad);
+            int city2 = graph.roadCity2(removedRoad);
+            int child = treeRoads[city1] == removedRoad ? city1 : treeRoads[city2] == removedRoad ? city2 : -1;
+            if (child >= 0) detachedCount = detachSubtree(child, detachedCount);
+        }
+
+        for (int i = 0; i < detachedCount; i++) {
+            int city = detachedCities[i];
+            for (int j = 0, degree = graph.degree(city); j < degree; j++) {
+                int road = graph.roadAt(city, j);
+                if (graph.isOpen(road)) relax(graph.otherCity(road, city), road);
+            }
+        }
+        for (RoadUpdate update : updates) {
+            int addedRoad = update.getAddedIndex();
+            if (addedRoad < 0 || !graph.isOpen(addedRoad)) continue;
+            relax(graph.roadCity1(addedRoad), addedRoad);
+            relax(graph.roadCity2(addedRoad), addedRoad);
+        }
+        growTree();
+    }
+
+    /**
+     * Removes a city and the cities whose tree route goes through it from the tree.
+     * The removed cities are appended to detachedCities.
+     *
+     * @return The new number of detached cities.
+     */
+    private int detachSubtree(int root, int detachedCount) {
+        DynamicRoadGraph graph = treeGraph;
+        int first = detachedCount;
+        treeRoads[root] = -1;
+        treeDistances[root] = Integer.MAX_VALUE;
+        detachedCities[detachedCount++] = root;
+        // The detached cities double as the stack of cities whose children are not yet visited
+        for (int next = first; next < detachedCount; next++) {
+            int city = detachedCities[next];
+            for (int j = 0, degree = graph.degree(city); j < degree; j++) {
+                int road = graph.roadAt(city, j);
+                int neighbor = graph.otherCity(road, city);
+                if (treeRoads[neighbor] == road) {
+                    treeRoads[neighbor] = -1;
+                    treeDistances[neighbor] = Integer.MAX_VALUE;
+                    detachedCities[detachedCount++] = neighbor;
+                }
+            }
+        }
+        return detachedCount;
+    }
+
+    /**
+     * Offers the route through a road to the city at its other end.
+     */
+    private void relax(int from, int road) {
+        int distance = treeDistances[from];
+        if (distance == Integer.MAX_VALUE) return;
+        int to = treeGraph.otherCity(road, from);
+        int newDistance = distance + treeGraph.roadWeight(road, criterion);
+        if (newDistance < treeDistances[to]) {
+            treeDistances[to] = newDistance;
+            treeRoads[to] = road;
+            treeQueue.push(to, IndexedMinHeap.key(newDistance, 0));
+        }
+    }
+
+    private void growTree() {
+        DynamicRoadGraph graph = treeGraph;
+        int[] settledCount = settledCounts.get();
+        while (!treeQueue.isEmpty()) {
+            int city = treeQueue.poll();
+            settledCount[0]++;
+            for (int j = 0, degree = graph.degree(city); j < degree; j++) {
+                int road = graph.roadAt(city, j);
+                if (graph.isOpen(road)) relax(city, road);
+            }
+        }
+    }
+
+    /**
+     * Computes the length of the fastest route from one city to every city.
+     *
+     * @param graph  The compact graph.
+     * @param source The id of the source city.
+     * @return The distances, with Integer.MAX_VALUE for unreachable cities.
+     */
+    static int[] distancesFrom(RoadGraph graph, int source) {
+        int cityCount = graph.cityCount();
+        IndexedMinHeap priorityQueue = new IndexedMinHeap(cityCount);
+        int[] distances = new int[cityCount];
+        boolean[] visitedCities = new boolean[cityCount];
+        Arrays.fill(distances, Integer.MAX_VALUE);
+        distances[source] = 0;
+        priorityQueue.push(source, IndexedMinHeap.key(0, -1));
+
+        while (!priorityQueue.isEmpty()) {
+            int currentCity = priorityQueue.poll();
+            visitedCities[currentCity] = true;
+            for (int edge = graph.firstEdge(currentCity); edge < graph.endEdge(currentCity); edge++) {
+                int neighborCity = graph.target(edge);
+                int newDistance = distances[currentCity] + graph.weight(edge);
+                if (!visitedCities[neighborCity] && newDistance < distances[neighborCity]) {
+                    distances[neighborCity] = newDistance;
+                    priorityQueue.push(neighborCity, IndexedMinHeap.key(newDistance, graph.roadId(edge)));
+                }
+            }
+        }
+        return distances;
+    }
+
+    /**
+     * Walks the predecessor roads back from a city and returns them in travel order.
+     *
+     * @param graph         The compact graph.
+     * @param previousRoads The road index used to reach each city, or -1.
+     * @param endCity       The city the route ends at.
+     * @return The road indexes from the start city to the end city.
+     */
+    static int[] tracePath(RoadGraph graph, int[] previousRoads, int endCity) {
+        int length = 0;
+        for (int city = endCity; previousRoads[city] >= 0; length++) {
+            city = graph.otherCity(previousRoads[city], city);
+        }
+        int[] path = new int[length];
+        for (int city = endCity; length > 0; ) {
+            int road = previousRoads[city];
+            path[--length] = road;
+            city = graph.otherCity(road, city);
         }
-        return fastestRouteNetwork;
+        return path;
     }
 }